@@ -0,0 +1,80 @@
+package org.iinegve.sftp.benchmarks;
+
+import org.iinegve.sftp.AlgorithmProfile;
+import org.iinegve.sftp.SftpClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handshake time and download throughput per algorithm profile. Handshake is reported in
+ * milliseconds, download as operations per second with {@code bytes} secondary metric, which is
+ * bytes per second.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AlgorithmProfileBenchmark {
+
+  private static final int FILE_SIZE = 16 * 1024 * 1024;
+
+  @Param({"DEFAULT", "THROUGHPUT", "LOW_LATENCY"})
+  public AlgorithmProfile profile;
+
+  private EmbeddedSftpServer server;
+  private SftpClient sftp;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Bytes {
+    public long bytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    server = EmbeddedSftpServer.start();
+    sftp = server.client().algorithmProfile(profile).build();
+
+    byte[] content = new byte[FILE_SIZE];
+    new Random(42).nextBytes(content);
+    Files.write(server.root().resolve("source"), content);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    sftp.disconnect();
+    server.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void handshake() {
+    sftp.connect();
+    sftp.disconnect();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void download(Bytes bytes) {
+    bytes.bytes += sftp.download("source", OutputStream.nullOutputStream());
+  }
+}
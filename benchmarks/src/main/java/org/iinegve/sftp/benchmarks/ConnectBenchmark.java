@@ -0,0 +1,58 @@
+package org.iinegve.sftp.benchmarks;
+
+import org.iinegve.sftp.SftpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting connected: session handshake alone, and the first operation after disconnect,
+ * which also opens a channel.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConnectBenchmark {
+
+  private EmbeddedSftpServer server;
+  private SftpClient sftp;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    server = EmbeddedSftpServer.start();
+    sftp = server.client().build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    sftp.disconnect();
+    server.close();
+  }
+
+  @Benchmark
+  public void connect() {
+    sftp.connect();
+    sftp.disconnect();
+  }
+
+  @Benchmark
+  public List<String> firstListing() {
+    sftp.disconnect();
+    return sftp.listDirectory(".");
+  }
+}
@@ -0,0 +1,88 @@
+package org.iinegve.sftp.benchmarks;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.iinegve.sftp.SftpClientBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.iinegve.sftp.SftpClient.sftpClient;
+
+/**
+ * The same Apache SSHD server that the functional tests run, but on a real directory, so that
+ * transfers hit the disk as they would in production. Server is on a free port of localhost and
+ * accepts any public key, client key is generated on start.
+ */
+class EmbeddedSftpServer implements AutoCloseable {
+
+  private final SshServer server;
+  private final Path root;
+  private final byte[] privateKey;
+
+  private EmbeddedSftpServer(SshServer server, Path root, byte[] privateKey) {
+    this.server = server;
+    this.root = root;
+    this.privateKey = privateKey;
+  }
+
+  static EmbeddedSftpServer start() throws Exception {
+    Path root = Files.createTempDirectory("sftp-benchmark");
+    SshServer server = SshServer.setUpDefaultServer();
+    server.setHost("localhost");
+    server.setPort(0);
+    server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(root.resolve(".hostkey")));
+    server.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+    server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+    server.setFileSystemFactory(new VirtualFileSystemFactory(root));
+    server.start();
+
+    KeyPair keyPair = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 2048);
+    ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+    keyPair.writePrivateKey(privateKey);
+    return new EmbeddedSftpServer(server, root, privateKey.toByteArray());
+  }
+
+  /**
+   * Builder of client that connects to this server, to be tuned by benchmark.
+   */
+  SftpClientBuilder client() {
+    return sftpClient()
+      .host("localhost")
+      .port(server.getPort())
+      .username("benchmark")
+      .privateKey(privateKey);
+  }
+
+  /**
+   * Directory on local disk that is the root of sftp.
+   */
+  Path root() {
+    return root;
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.stop(true);
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+        try {
+          Files.delete(path);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+}
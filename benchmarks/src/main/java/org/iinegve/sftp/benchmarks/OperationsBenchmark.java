@@ -0,0 +1,134 @@
+package org.iinegve.sftp.benchmarks;
+
+import org.iinegve.sftp.SftpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and throughput of short operations on a connected client, with a single thread and
+ * with {@value #THREADS} threads sharing the client. Every thread works in its own directory.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OperationsBenchmark {
+
+  static final int THREADS = 8;
+
+  @State(Scope.Benchmark)
+  public static class Client {
+    private final AtomicInteger threads = new AtomicInteger();
+    private EmbeddedSftpServer server;
+    private SftpClient sftp;
+
+    @Param({"10", "1000"})
+    public int filesInDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      server = EmbeddedSftpServer.start();
+      sftp = server.client().build();
+      sftp.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      sftp.disconnect();
+      server.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Directory {
+    private Path local;
+    private String remote;
+    private boolean moved;
+    private int deleted;
+
+    @Setup(Level.Trial)
+    public void setUp(Client client) throws IOException {
+      remote = "dir-" + client.threads.incrementAndGet();
+      local = Files.createDirectory(client.server.root().resolve(remote));
+      for (int i = 0; i < client.filesInDirectory; i++) {
+        Files.write(local.resolve("file-" + i), new byte[]{1});
+      }
+    }
+
+    private String file(String name) {
+      return remote + "/" + name;
+    }
+  }
+
+  @Benchmark
+  public List<String> listDirectory(Client client, Directory dir) {
+    return client.sftp.listDirectory(dir.remote);
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public List<String> listDirectoryConcurrently(Client client, Directory dir) {
+    return client.sftp.listDirectory(dir.remote);
+  }
+
+  @Benchmark
+  public void move(Client client, Directory dir) {
+    move(client.sftp, dir);
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public void moveConcurrently(Client client, Directory dir) {
+    move(client.sftp, dir);
+  }
+
+  /**
+   * File to delete is created right on the server's disk, which takes microseconds compared to
+   * the round trip of deletion.
+   */
+  @Benchmark
+  public void delete(Client client, Directory dir) throws IOException {
+    delete(client.sftp, dir);
+  }
+
+  @Benchmark
+  @Threads(THREADS)
+  public void deleteConcurrently(Client client, Directory dir) throws IOException {
+    delete(client.sftp, dir);
+  }
+
+  private static void move(SftpClient sftp, Directory dir) {
+    if (dir.moved) {
+      sftp.move(dir.file("moved"), dir.file("file-0"));
+    } else {
+      sftp.move(dir.file("file-0"), dir.file("moved"));
+    }
+    dir.moved = !dir.moved;
+  }
+
+  private static void delete(SftpClient sftp, Directory dir) throws IOException {
+    String name = "deleted-" + dir.deleted++;
+    Files.write(dir.local.resolve(name), new byte[]{1});
+    sftp.delete(dir.file(name));
+  }
+}
@@ -0,0 +1,108 @@
+package org.iinegve.sftp.benchmarks;
+
+import org.iinegve.sftp.SftpClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload and download throughput across file sizes. Besides operations per second, JMH reports
+ * {@code bytes} secondary metric, which is bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class TransferBenchmark {
+
+  @Param({"1024", "1048576", "33554432"})
+  public int fileSize;
+
+  @Param({"1", "4"})
+  public int segmentParallelism;
+
+  @Param({"16", "64"})
+  public int bulkRequests;
+
+  private EmbeddedSftpServer server;
+  private SftpClient sftp;
+  private Path localDir;
+  private File source;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Bytes {
+    public long bytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    server = EmbeddedSftpServer.start();
+    sftp = server.client()
+      .segmentParallelism(segmentParallelism)
+      .bulkRequests(bulkRequests)
+      .segmentSize(Math.max(fileSize / 4, 64 * 1024))
+      .build();
+    sftp.connect();
+
+    localDir = Files.createTempDirectory("sftp-benchmark-local");
+    byte[] content = new byte[fileSize];
+    new Random(42).nextBytes(content);
+    source = Files.write(localDir.resolve("source"), content).toFile();
+    Files.write(server.root().resolve("source"), content);
+    Files.createDirectory(server.root().resolve("uploads"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    sftp.disconnect();
+    server.close();
+    Files.deleteIfExists(localDir.resolve("source"));
+    Files.deleteIfExists(localDir.resolve("downloaded"));
+    Files.deleteIfExists(localDir);
+  }
+
+  @Benchmark
+  public void upload(Bytes bytes) {
+    sftp.upload(source, "uploads");
+    bytes.bytes += fileSize;
+  }
+
+  @Benchmark
+  public void download(Bytes bytes) {
+    sftp.download("source", localDir.resolve("downloaded").toFile());
+    bytes.bytes += fileSize;
+  }
+
+  @Benchmark
+  public void downloadIntoStream(Bytes bytes) {
+    bytes.bytes += sftp.download("source", OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void downloadSegmented(Bytes bytes) throws IOException {
+    sftp.downloadSegmented("source", localDir.resolve("downloaded").toFile());
+    bytes.bytes += fileSize;
+  }
+}
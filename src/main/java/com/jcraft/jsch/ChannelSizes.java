@@ -0,0 +1,23 @@
+package com.jcraft.jsch;
+
+/**
+ * Sets channel window and maximum packet size that JSch keeps package private. Both are sent to
+ * the server in channel open request, so they take effect only when set before channel is
+ * connected.
+ */
+public final class ChannelSizes {
+
+  private ChannelSizes() {
+  }
+
+  /**
+   * @param channel    not connected yet channel
+   * @param windowSize how many bytes server may send before it has to wait for window adjust
+   * @param packetSize the largest data packet server may send
+   */
+  public static void apply(Channel channel, int windowSize, int packetSize) {
+    channel.setLocalWindowSizeMax(windowSize);
+    channel.setLocalWindowSize(windowSize);
+    channel.setLocalPacketSize(packetSize);
+  }
+}
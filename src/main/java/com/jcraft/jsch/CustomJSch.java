@@ -2,54 +2,128 @@ package com.jcraft.jsch;
 
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Customized version of JSch that allows providing identity file from in memory string without
- * creating a temporary file.
+ * creating a temporary file. It's safe to share one instance by many clients.
  */
 public class CustomJSch extends JSch {
 
   private static final org.slf4j.Logger log = LoggerFactory.getLogger("org.iinegve.CustomJSch");
+  private static final org.slf4j.Logger trace =
+    LoggerFactory.getLogger("org.iinegve.CustomJSch.trace");
+  private static final ThreadLocal<Boolean> TRACED = new InheritableThreadLocal<>();
+
+  private final Set<String> identities = new HashSet<>();
 
   public CustomJSch() {
-    setLogger(new SimpleLogger());
+    setLogger(new Slf4jLogger());
   }
 
   /**
-   * Adds RSA identity without having a file.
+   * Adds RSA identity without having a file. The same key added again is not parsed again, so
+   * instance can be shared by clients that are built with the same key.
    * <p>
    * @param privateKey byte array that contains private key
    * @throws UncheckedJSchException in case anything happens
    */
-  public void addRsaIdentity(byte[] privateKey) {
+  public synchronized void addRsaIdentity(byte[] privateKey) {
+    String digest = digest(privateKey);
+    if (identities.contains(digest)) {
+      return;
+    }
     try {
       Identity identity = IdentityFile.newInstance("in-memory", privateKey, null, this);
       addIdentity(identity, null);
+      identities.add(digest);
     } catch (Exception ex) {
       throw new UncheckedJSchException(ex);
     }
   }
 
+  /**
+   * Whether any identity is added already.
+   */
+  public synchronized boolean hasIdentity() {
+    try {
+      return !identities.isEmpty() || !getIdentityNames().isEmpty();
+    } catch (JSchException ex) {
+      throw new UncheckedJSchException(ex);
+    }
+  }
+
+  private static String digest(byte[] privateKey) {
+    try {
+      return new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(privateKey))
+        .toString(16);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new UncheckedJSchException(ex);
+    }
+  }
 
-  private static class SimpleLogger implements com.jcraft.jsch.Logger {
+
+  /**
+   * Sends JSch log of the current thread to {@code org.iinegve.CustomJSch.trace} logger instead of
+   * the usual {@code org.iinegve.CustomJSch}, so that a sampled session can be traced at debug,
+   * while the rest of them log warnings only. Threads created meanwhile are traced too, so turned
+   * on around {@code session.connect()} it covers handshake and authentication, logged by the
+   * calling thread, and whatever the session's own reader thread logs afterwards, like rekeys and
+   * connection loss. {@code session.disconnect()} logs on the thread that calls it, that is not
+   * traced unless it's turned on there as well.
+   * <p>
+   * @param traced whether to trace, false stops tracing
+   */
+  public static void traceCurrentThread(boolean traced) {
+    if (traced) {
+      TRACED.set(Boolean.TRUE);
+    } else {
+      TRACED.remove();
+    }
+  }
+
+  /**
+   * Bridge to SLF4J that tells JSch which levels are enabled, so that it doesn't build messages
+   * that would be dropped anyway.
+   */
+  private static class Slf4jLogger implements com.jcraft.jsch.Logger {
 
     @Override
     public boolean isEnabled(int level) {
-      return true;
+      org.slf4j.Logger logger = logger();
+      if (level == DEBUG) {
+        return logger.isDebugEnabled();
+      } else if (level == INFO) {
+        return logger.isInfoEnabled();
+      } else if (level == WARN) {
+        return logger.isWarnEnabled();
+      } else {
+        return logger.isErrorEnabled();
+      }
     }
 
     @Override
     public void log(int level, String message) {
+      org.slf4j.Logger logger = logger();
       if (level == DEBUG) {
-        log.debug(message);
+        logger.debug(message);
       } else if (level == INFO) {
-        log.info(message);
+        logger.info(message);
       } else if (level == WARN) {
-        log.warn(message);
+        logger.warn(message);
       } else if (level == ERROR) {
-        log.error(message);
+        logger.error(message);
       } else if (level == FATAL) {
-        log.error(message);
+        logger.error(message);
       }
     }
+
+    private static org.slf4j.Logger logger() {
+      return TRACED.get() == null ? log : trace;
+    }
   }
 }
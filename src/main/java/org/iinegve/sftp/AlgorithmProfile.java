@@ -0,0 +1,69 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.JSch;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Order in which ciphers, MACs and key exchanges are offered to the server. Server picks the first
+ * algorithm of client's list that it supports, so a profile only moves the fast algorithms to the
+ * front and keeps the rest, connection still works with servers that don't have them.
+ */
+public enum AlgorithmProfile {
+
+  /**
+   * JSch defaults, it's the default.
+   */
+  DEFAULT,
+
+  /**
+   * For bulk transfer: AES-CTR ciphers and HMAC-SHA1 first, CBC modes, 3DES, blowfish and MD5
+   * based MACs last.
+   */
+  THROUGHPUT,
+
+  /**
+   * For connection churn: the same ciphers and MACs as {@link #THROUGHPUT}, ECDH key exchange
+   * without group exchange, which costs an extra round trip, and JSch checks availability of
+   * preferred algorithms only, instead of generating a key for every curve on each handshake.
+   */
+  LOW_LATENCY;
+
+  private static final String[] FAST_CIPHERS = {"aes128-ctr", "aes192-ctr", "aes256-ctr"};
+  private static final String[] FAST_MACS = {"hmac-sha1", "hmac-sha2-256"};
+  private static final String[] FAST_KEXES = {"ecdh-sha2-nistp256", "ecdh-sha2-nistp384"};
+
+  /**
+   * Puts algorithm lists of the profile into session config.
+   */
+  void apply(Properties config) {
+    if (this == DEFAULT) {
+      return;
+    }
+    for (String direction : new String[]{"s2c", "c2s"}) {
+      config.put("cipher." + direction, prefer("cipher." + direction, FAST_CIPHERS));
+      config.put("mac." + direction, prefer("mac." + direction, FAST_MACS));
+    }
+    if (this == LOW_LATENCY) {
+      config.put("kex", prefer("kex", FAST_KEXES, kex -> !kex.contains("group-exchange")));
+      config.put("CheckKexes", FAST_KEXES[0]);
+      config.put("CheckCiphers", FAST_CIPHERS[0]);
+    }
+  }
+
+  private static String prefer(String key, String[] first) {
+    return prefer(key, first, algorithm -> true);
+  }
+
+  private static String prefer(String key, String[] first, Predicate<String> keep) {
+    Set<String> algorithms = new LinkedHashSet<>(Arrays.asList(first));
+    Arrays.stream(JSch.getConfig(key).split(","))
+      .filter(keep)
+      .forEach(algorithms::add);
+    return String.join(",", algorithms);
+  }
+}
@@ -0,0 +1,305 @@
+package org.iinegve.sftp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Non blocking facade of {@link SftpClient}: operations return right away with a future that is
+ * completed when the operation is done.
+ * <p>
+ * Operations still block while they run, so they run on an executor. By default, it's virtual
+ * threads when JDK has them, that is 21 or newer, so thousands of operations cost nothing but
+ * memory, and otherwise a pool of {@code maxInFlight} daemon threads. Number of operations that
+ * run at the same time is bounded by {@code maxInFlight} anyway, the rest of them wait in a queue
+ * without taking a thread, so submitting never blocks the caller.
+ * <p>
+ * Configure before the first operation:
+ * <pre>{@code
+ * AsyncSftpClient async = new AsyncSftpClient(sftp)
+ *     .maxInFlight(64);
+ * CompletableFuture<File> file = async.download("inbox/a", localDir);
+ * }</pre>
+ */
+public class AsyncSftpClient implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncSftpClient.class);
+
+  private final SftpClient sftp;
+  private final Queue<Task<?>> queue = new ConcurrentLinkedQueue<>();
+  private int maxInFlight;
+  private Executor executor;
+  private ExecutorService ownExecutor;
+  private Semaphore permits;
+
+  public AsyncSftpClient(SftpClient sftp) {
+    this.sftp = sftp;
+    this.maxInFlight = sftp.channelCapacity();
+  }
+
+  /**
+   * How many operations run at the same time, the rest of them wait. Default is the number of
+   * channels the session pool gives out, that is {@code maxSessions * maxChannelsPerSession}, as
+   * more operations would wait for a channel anyway.
+   */
+  public AsyncSftpClient maxInFlight(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Max in flight must be positive");
+    }
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Executor to run operations on, it's not shut down by {@link #close()}. Default is virtual
+   * threads when available, and otherwise a pool of {@code maxInFlight} daemon threads.
+   */
+  public AsyncSftpClient executor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @see SftpClient#upload(File, String)
+   */
+  public CompletableFuture<Void> upload(File file, String remoteDir) {
+    return submit(() -> {
+      sftp.upload(file, remoteDir);
+      return null;
+    });
+  }
+
+  /**
+   * @see SftpClient#upload(ByteBuffer, String)
+   */
+  public CompletableFuture<Void> upload(ByteBuffer content, String remoteFilePath) {
+    return submit(() -> {
+      sftp.upload(content, remoteFilePath);
+      return null;
+    });
+  }
+
+  /**
+   * Whole batch is one operation here, files are transferred in parallel by the client itself.
+   *
+   * @see SftpClient#uploadAll(Collection, String)
+   */
+  public CompletableFuture<TransferReport> uploadAll(Collection<File> files, String remoteDir) {
+    return submit(() -> sftp.uploadAll(files, remoteDir));
+  }
+
+  /**
+   * @see SftpClient#download(String, File)
+   */
+  public CompletableFuture<File> download(String remoteFilePath, File localDestination) {
+    return submit(() -> sftp.download(remoteFilePath, localDestination));
+  }
+
+  /**
+   * Whole batch is one operation here, files are transferred in parallel by the client itself.
+   *
+   * @see SftpClient#downloadAll(Collection, File)
+   */
+  public CompletableFuture<TransferReport> downloadAll(Collection<String> remoteFilePaths,
+                                                       File localDir) {
+    return submit(() -> sftp.downloadAll(remoteFilePaths, localDir));
+  }
+
+  /**
+   * @see SftpClient#listDirectory(String)
+   */
+  public CompletableFuture<List<String>> listDirectory(String remoteDir) {
+    return submit(() -> sftp.listDirectory(remoteDir));
+  }
+
+  /**
+   * @see SftpClient#listFiles(String)
+   */
+  public CompletableFuture<List<RemoteFile>> listFiles(String remoteDir) {
+    return submit(() -> sftp.listFiles(remoteDir));
+  }
+
+  /**
+   * @see SftpClient#stat(String)
+   */
+  public CompletableFuture<Optional<RemoteFile>> stat(String remotePath) {
+    return submit(() -> sftp.stat(remotePath));
+  }
+
+  /**
+   * @see SftpClient#exists(String)
+   */
+  public CompletableFuture<Boolean> exists(String remotePath) {
+    return submit(() -> sftp.exists(remotePath));
+  }
+
+  /**
+   * @see SftpClient#statAll(Collection)
+   */
+  public CompletableFuture<Map<String, Optional<RemoteFile>>> statAll(
+    Collection<String> remotePaths) {
+    return submit(() -> sftp.statAll(remotePaths));
+  }
+
+  /**
+   * @see SftpClient#move(String, String)
+   */
+  public CompletableFuture<Void> move(String remoteFileFrom, String remoteFileTo) {
+    return submit(() -> {
+      sftp.move(remoteFileFrom, remoteFileTo);
+      return null;
+    });
+  }
+
+  /**
+   * @see SftpClient#moveAll(Map)
+   */
+  public CompletableFuture<BatchReport> moveAll(Map<String, String> remoteFiles) {
+    return submit(() -> sftp.moveAll(remoteFiles));
+  }
+
+  /**
+   * @see SftpClient#delete(String)
+   */
+  public CompletableFuture<Void> delete(String remoteFile) {
+    return submit(() -> {
+      sftp.delete(remoteFile);
+      return null;
+    });
+  }
+
+  /**
+   * @see SftpClient#deleteAll(Collection)
+   */
+  public CompletableFuture<BatchReport> deleteAll(Collection<String> remoteFiles) {
+    return submit(() -> sftp.deleteAll(remoteFiles));
+  }
+
+  /**
+   * Number of operations that wait to be run.
+   */
+  public int queued() {
+    return queue.size();
+  }
+
+  /**
+   * Shuts down default executor, operations that wait in the queue are not run. Doesn't close
+   * the sftp client.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (ownExecutor != null) {
+        ownExecutor.shutdown();
+      }
+    }
+    Task<?> task;
+    while ((task = queue.poll()) != null) {
+      task.future.cancel(false);
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(Supplier<T> op) {
+    Task<T> task = new Task<>(op);
+    queue.add(task);
+    dispatch();
+    return task.future;
+  }
+
+  /**
+   * Starts queued operations while there are free permits. It's called on every submit and
+   * whenever an operation is done, queue is always checked after permit is given back, so no
+   * operation is left in the queue with free permits.
+   */
+  private void dispatch() {
+    Semaphore permits = permits();
+    while (!queue.isEmpty() && permits.tryAcquire()) {
+      Task<?> task = queue.poll();
+      if (task == null) {
+        permits.release();
+        continue;
+      }
+      try {
+        executor().execute(() -> {
+          try {
+            task.run();
+          } finally {
+            permits.release();
+            dispatch();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        task.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private synchronized Semaphore permits() {
+    if (permits == null) {
+      permits = new Semaphore(maxInFlight);
+    }
+    return permits;
+  }
+
+  private synchronized Executor executor() {
+    if (executor == null) {
+      ownExecutor = virtualThreads();
+      if (ownExecutor == null) {
+        ownExecutor =
+          Executors.newFixedThreadPool(maxInFlight, Parallel.daemonThreads("sftp-async"));
+      }
+      executor = ownExecutor;
+    }
+    return executor;
+  }
+
+  /**
+   * Virtual thread per task executor, when JDK has it. Library is built for Java 11, so it's
+   * looked up by reflection.
+   */
+  private static ExecutorService virtualThreads() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+        .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.debug("Virtual threads are not available, using platform threads");
+      return null;
+    }
+  }
+
+  private static class Task<T> {
+    private final Supplier<T> op;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private Task(Supplier<T> op) {
+      this.op = op;
+    }
+
+    private void run() {
+      if (future.isDone()) {
+        return;
+      }
+      try {
+        future.complete(op.get());
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package org.iinegve.sftp;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Per-path results of a batch operation, for example, bulk delete.
+ */
+public final class BatchReport {
+
+  private final List<PathResult> results;
+  private final Duration elapsed;
+
+  BatchReport(List<PathResult> results, Duration elapsed) {
+    this.results = Collections.unmodifiableList(results);
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Results in the same order as paths were given to the batch.
+   */
+  public List<PathResult> results() {
+    return results;
+  }
+
+  public List<PathResult> done() {
+    return withOutcome(PathResult.Outcome.DONE);
+  }
+
+  public List<PathResult> missing() {
+    return withOutcome(PathResult.Outcome.MISSING);
+  }
+
+  public List<PathResult> failed() {
+    return withOutcome(PathResult.Outcome.FAILED);
+  }
+
+  /**
+   * Whether nothing has failed. Missing paths don't count as failure.
+   */
+  public boolean isSuccessful() {
+    return results.stream().noneMatch(r -> r.outcome() == PathResult.Outcome.FAILED);
+  }
+
+  /**
+   * Wall-clock time of the whole batch.
+   */
+  public Duration elapsed() {
+    return elapsed;
+  }
+
+  private List<PathResult> withOutcome(PathResult.Outcome outcome) {
+    return results.stream().filter(r -> r.outcome() == outcome).collect(toList());
+  }
+
+  @Override
+  public String toString() {
+    return "BatchReport{paths=" + results.size() + ", done=" + done().size()
+      + ", missing=" + missing().size() + ", failed=" + failed().size()
+      + ", elapsed=" + elapsed + "}";
+  }
+}
@@ -0,0 +1,39 @@
+package org.iinegve.sftp;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream of remaining bytes of a buffer. Reading moves buffer position.
+ */
+class ByteBufferInputStream extends InputStream {
+
+  private final ByteBuffer buffer;
+
+  ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    int read = Math.min(len, buffer.remaining());
+    buffer.get(b, off, read);
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+}
@@ -0,0 +1,68 @@
+package org.iinegve.sftp;
+
+/**
+ * Counters of metadata cache, since the client is created.
+ */
+public final class CacheStats {
+
+  private final long hits;
+  private final long misses;
+  private final long coalesced;
+  private final long evictions;
+  private final int size;
+
+  CacheStats(long hits, long misses, long coalesced, long evictions, int size) {
+    this.hits = hits;
+    this.misses = misses;
+    this.coalesced = coalesced;
+    this.evictions = evictions;
+    this.size = size;
+  }
+
+  /**
+   * Requests served from the cache.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * Requests that went to the server.
+   */
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * Requests that missed the cache, but waited for the same request already in flight instead of
+   * going to the server.
+   */
+  public long coalesced() {
+    return coalesced;
+  }
+
+  /**
+   * Entries dropped because cache reached its maximum size.
+   */
+  public long evictions() {
+    return evictions;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Share of requests that didn't go to the server, between 0 and 1.
+   */
+  public double hitRate() {
+    long total = hits + misses + coalesced;
+    return total == 0 ? 0 : (double) (hits + coalesced) / total;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hits=" + hits + ", misses=" + misses + ", coalesced=" + coalesced
+      + ", evictions=" + evictions + ", size=" + size + "}";
+  }
+}
@@ -0,0 +1,191 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ObjLongConsumer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * JSch session together with sftp channels that are opened on it, but not used at the moment.
+ * <p>
+ * Opening a channel costs a round trip for channel open and another one for sftp subsystem
+ * initialization, which is often more than the operation itself. So, instead of closing a channel
+ * after an operation it's given back here and the next operation takes it. Channels are reused in
+ * LIFO order, so the rarely used ones sit at the tail and get evicted after idle timeout.
+ */
+class CachedSession {
+
+  private static final Logger log = LoggerFactory.getLogger(CachedSession.class);
+
+  private final Session session;
+  private final long idleTimeoutNanos;
+  private final int maxIdleChannels;
+  private final SftpMetrics metrics;
+  private final TransferTuning tuning;
+  private final ObjLongConsumer<Endpoint> channelOpened;
+  private final Deque<IdleChannel> idleChannels = new ArrayDeque<>();
+
+  private volatile long roundTripNanos;
+
+  CachedSession(Session session, Duration idleTimeout, int maxIdleChannels, SftpMetrics metrics,
+                TransferTuning tuning, ObjLongConsumer<Endpoint> channelOpened) {
+    this.session = session;
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+    this.maxIdleChannels = maxIdleChannels;
+    this.metrics = metrics;
+    this.tuning = tuning;
+    this.channelOpened = channelOpened;
+  }
+
+  Session session() {
+    return session;
+  }
+
+  Endpoint endpoint() {
+    return Endpoint.of(session.getHost(), session.getPort());
+  }
+
+  boolean isConnected() {
+    return session.isConnected();
+  }
+
+  /**
+   * Gives either cached healthy channel or opens a new one, when there is nothing to reuse. New
+   * channel is sized with transfer tuning, the fastest channel opening so far is taken as round
+   * trip estimate of the session.
+   */
+  ChannelSftp acquire() throws JSchException {
+    synchronized (this) {
+      evictExpired();
+      IdleChannel idle;
+      while ((idle = idleChannels.pollFirst()) != null) {
+        if (isHealthy(idle.channel)) {
+          return idle.channel;
+        }
+        log.debug("Dropping cached channel, as it's not connected anymore");
+        idle.channel.disconnect();
+      }
+    }
+
+    long started = System.nanoTime();
+    boolean opened = false;
+    try {
+      ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+      tuning.beforeConnect(channel, roundTripNanos);
+      channel.connect();
+      opened = true;
+      channelOpened.accept(endpoint(), System.nanoTime() - started);
+      if (tuning.isAdaptive()) {
+        long roundTrip = TransferTuning.roundTrip(System.nanoTime() - started);
+        if (roundTripNanos == 0 || roundTrip < roundTripNanos) {
+          roundTripNanos = roundTrip;
+        }
+      }
+      tuning.afterConnect(channel, roundTripNanos);
+      return channel;
+    } finally {
+      metrics.channelOpened(System.nanoTime() - started, opened);
+    }
+  }
+
+  /**
+   * Returns channel to the cache. Channel that is not healthy anymore or doesn't fit into the
+   * cache is closed.
+   */
+  void release(ChannelSftp channel) {
+    synchronized (this) {
+      evictExpired();
+      if (isHealthy(channel) && idleChannels.size() < maxIdleChannels) {
+        idleChannels.addFirst(new IdleChannel(channel, System.nanoTime()));
+        return;
+      }
+    }
+    channel.disconnect();
+  }
+
+  /**
+   * Closes channel without giving it back to the cache, for example, when operation on it failed
+   * and it's not clear what state it's left in.
+   */
+  void discard(ChannelSftp channel) {
+    channel.disconnect();
+  }
+
+  void close() {
+    synchronized (this) {
+      idleChannels.forEach(idle -> idle.channel.disconnect());
+      idleChannels.clear();
+    }
+    session.disconnect();
+  }
+
+  /**
+   * Makes a real round trip on the session: {@code realpath(".")} on a cached channel, or on a new
+   * one when there is nothing cached. Keepalive message doesn't wait for a reply, so it can't tell
+   * a hung server from a live one, this can. The call runs on the given executor, so that it's
+   * given up after the timeout.
+   *
+   * @throws TimeoutException when server doesn't answer within the timeout
+   */
+  void probe(ExecutorService executor, Duration timeout) throws Exception {
+    Future<?> reply = executor.submit(() -> {
+      ChannelSftp channel = acquire();
+      try {
+        channel.realpath(".");
+      } catch (Exception e) {
+        discard(channel);
+        throw e;
+      }
+      release(channel);
+      return null;
+    });
+    try {
+      reply.get(timeout.toNanos(), NANOSECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } catch (TimeoutException e) {
+      reply.cancel(true);
+      throw new TimeoutException("No reply within " + timeout.toMillis() + " ms");
+    }
+  }
+
+  /**
+   * Closes channels idle for longer than the timeout.
+   */
+  synchronized void evictExpired() {
+    long now = System.nanoTime();
+    IdleChannel oldest;
+    while ((oldest = idleChannels.peekLast()) != null && now - oldest.since > idleTimeoutNanos) {
+      idleChannels.pollLast();
+      log.debug("Closing channel idle for more than [{}] ms", idleTimeoutNanos / 1_000_000);
+      oldest.channel.disconnect();
+    }
+  }
+
+  private boolean isHealthy(ChannelSftp channel) {
+    return session.isConnected() && channel.isConnected() && !channel.isClosed()
+      && !channel.isEOF();
+  }
+
+  private static class IdleChannel {
+    private final ChannelSftp channel;
+    private final long since;
+
+    private IdleChannel(ChannelSftp channel, long since) {
+      this.channel = channel;
+      this.since = since;
+    }
+  }
+}
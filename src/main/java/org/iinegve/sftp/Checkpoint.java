@@ -0,0 +1,82 @@
+package org.iinegve.sftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * State of an interrupted transfer kept in a local file, so that transfer can be resumed even
+ * after restart. Partial content is resumed only when source is still the same, that is of the
+ * same size and modification time.
+ */
+class Checkpoint {
+
+  private final String source;
+  private final long size;
+  private final long mtime;
+  private final long offset;
+
+  Checkpoint(String source, long size, long mtime, long offset) {
+    this.source = source;
+    this.size = size;
+    this.mtime = mtime;
+    this.offset = offset;
+  }
+
+  /**
+   * @return checkpoint or null when there is none or it cannot be read
+   */
+  static Checkpoint load(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      props.load(in);
+      return new Checkpoint(props.getProperty("source"),
+        Long.parseLong(props.getProperty("size")),
+        Long.parseLong(props.getProperty("mtime")),
+        Long.parseLong(props.getProperty("offset")));
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  void save(File file) {
+    Properties props = new Properties();
+    props.setProperty("source", source);
+    props.setProperty("size", Long.toString(size));
+    props.setProperty("mtime", Long.toString(mtime));
+    props.setProperty("offset", Long.toString(offset));
+
+    Path target = file.toPath().toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        props.store(out, null);
+      }
+      Files.move(temp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  boolean isOf(String source, long size, long mtime) {
+    return this.source.equals(source) && this.size == size && this.mtime == mtime;
+  }
+
+  Checkpoint at(long offset) {
+    return new Checkpoint(source, size, mtime, offset);
+  }
+
+  long offset() {
+    return offset;
+  }
+}
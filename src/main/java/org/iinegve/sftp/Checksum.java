@@ -0,0 +1,91 @@
+package org.iinegve.sftp;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * Digest computed over transferred bytes while they stream through, without reading the file
+ * again. JSch cannot send sftp {@code check-file} request, so remote side of the check is a
+ * sidecar file next to the transferred one, like {@code data.csv.sha256}, in the format of
+ * {@code sha256sum}: hex digest optionally followed by file name.
+ */
+public enum Checksum {
+
+  CRC32C("crc32c"),
+  MD5("md5"),
+  SHA256("sha256");
+
+  private final String extension;
+
+  Checksum(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * Path of the sidecar file with digest of a given remote file.
+   */
+  public String sidecar(String remoteFilePath) {
+    return remoteFilePath + "." + extension;
+  }
+
+  Hasher hasher() {
+    if (this == CRC32C) {
+      return new CrcHasher();
+    }
+    try {
+      return new DigestHasher(MessageDigest.getInstance(this == MD5 ? "MD5" : "SHA-256"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  /**
+   * Digest that's being computed.
+   */
+  abstract static class Hasher {
+
+    abstract void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Lower case hex of the digest, CRC32C is given as 8 digits, big-endian.
+     */
+    abstract String hex();
+  }
+
+  private static class CrcHasher extends Hasher {
+    private final CRC32C crc = new CRC32C();
+
+    @Override
+    void update(byte[] bytes, int offset, int length) {
+      crc.update(bytes, offset, length);
+    }
+
+    @Override
+    String hex() {
+      return String.format("%08x", crc.getValue());
+    }
+  }
+
+  private static class DigestHasher extends Hasher {
+    private final MessageDigest digest;
+
+    private DigestHasher(MessageDigest digest) {
+      this.digest = digest;
+    }
+
+    @Override
+    void update(byte[] bytes, int offset, int length) {
+      digest.update(bytes, offset, length);
+    }
+
+    @Override
+    String hex() {
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package org.iinegve.sftp;
+
+import java.io.IOException;
+
+/**
+ * Digest of transferred bytes differs from the one remote side has, so the transfer is broken.
+ */
+public class ChecksumMismatchException extends IOException {
+
+  public ChecksumMismatchException(String path, String expected, String actual) {
+    super("Checksum of [" + path + "] is [" + actual + "], but expected [" + expected + "]");
+  }
+}
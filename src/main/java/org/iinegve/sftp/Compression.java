@@ -0,0 +1,25 @@
+package org.iinegve.sftp;
+
+/**
+ * Whether ssh sessions compress the traffic with {@code zlib@openssh.com}.
+ */
+public enum Compression {
+
+  /**
+   * Nothing is compressed, it's the default.
+   */
+  OFF,
+
+  /**
+   * All the sessions are compressed.
+   */
+  ON,
+
+  /**
+   * File transfers that are likely to gain from compression go over compressed sessions, the rest
+   * over plain ones. It's decided by file extension, and for uploads of unknown file types by
+   * compressing a sample from the beginning of the file. Compressed sessions are kept in their own
+   * pool, opened on first use.
+   */
+  ADAPTIVE
+}
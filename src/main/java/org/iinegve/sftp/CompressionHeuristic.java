@@ -0,0 +1,95 @@
+package org.iinegve.sftp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Guesses whether a file gains from ssh compression, so that CPU is not burnt on data that's
+ * already compressed, like archives, columnar formats or media.
+ */
+final class CompressionHeuristic {
+
+  static final int SAMPLE_SIZE = 64 * 1024;
+
+  /**
+   * Sample has to shrink at least by that factor for compression to pay off.
+   */
+  static final double MIN_RATIO = 1.25;
+
+  private static final Set<String> COMPRESSED = Set.of(
+    "zip", "gz", "tgz", "bz2", "xz", "zst", "lz4", "snappy", "7z", "rar", "jar",
+    "parquet", "orc", "avro", "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "mkv", "mov",
+    "pdf", "docx", "xlsx", "pptx");
+
+  private static final Set<String> TEXT = Set.of(
+    "csv", "tsv", "txt", "log", "xml", "json", "html", "htm", "sql", "yaml", "yml");
+
+  private CompressionHeuristic() {
+  }
+
+  /**
+   * Decision by file extension, empty when file type is not known.
+   */
+  static Optional<Boolean> byName(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    String extension = dot == -1 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    if (COMPRESSED.contains(extension)) {
+      return Optional.of(false);
+    }
+    if (TEXT.contains(extension)) {
+      return Optional.of(true);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Decision by file extension, or by sample ratio when file type is not known.
+   */
+  static boolean worthCompressing(File file) {
+    return byName(file.getName()).orElseGet(() -> ratio(file) >= MIN_RATIO);
+  }
+
+  /**
+   * How many times the beginning of the file shrinks with fast deflate, 1 for empty or unreadable
+   * file.
+   */
+  static double ratio(File file) {
+    byte[] sample = new byte[SAMPLE_SIZE];
+    int length = 0;
+    try (InputStream in = new FileInputStream(file)) {
+      int read = 0;
+      while (length < sample.length && read >= 0) {
+        read = in.read(sample, length, sample.length - length);
+        length += Math.max(read, 0);
+      }
+    } catch (IOException e) {
+      return 1;
+    }
+    return ratio(sample, length);
+  }
+
+  static double ratio(byte[] sample, int length) {
+    if (length == 0) {
+      return 1;
+    }
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(sample, 0, length);
+      deflater.finish();
+      byte[] out = new byte[SAMPLE_SIZE];
+      long compressed = 0;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(out);
+      }
+      return (double) length / Math.max(compressed, 1);
+    } finally {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.SocketFactory;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.function.LongConsumer;
+
+/**
+ * Plain socket, the same JSch opens by default, that tells how many bytes are read from and
+ * written to it. Those are bytes on the wire, after compression and encryption, so together with
+ * the size of transferred files they give compression ratio that's actually achieved.
+ */
+class CountingSocketFactory implements SocketFactory {
+
+  private final LongConsumer counted;
+
+  CountingSocketFactory(LongConsumer counted) {
+    this.counted = counted;
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    return new Socket(host, port);
+  }
+
+  @Override
+  public InputStream getInputStream(Socket socket) throws IOException {
+    return new FilterInputStream(socket.getInputStream()) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          counted.accept(1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+          counted.accept(read);
+        }
+        return read;
+      }
+    };
+  }
+
+  @Override
+  public OutputStream getOutputStream(Socket socket) throws IOException {
+    return new FilterOutputStream(socket.getOutputStream()) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        counted.accept(1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        counted.accept(len);
+      }
+    };
+  }
+}
@@ -0,0 +1,51 @@
+package org.iinegve.sftp;
+
+import java.util.Objects;
+
+/**
+ * Host and port of sftp server.
+ */
+public final class Endpoint {
+
+  private final String host;
+  private final int port;
+
+  private Endpoint(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  public static Endpoint of(String host, int port) {
+    return new Endpoint(host, port);
+  }
+
+  public String host() {
+    return host;
+  }
+
+  public int port() {
+    return port;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Endpoint)) {
+      return false;
+    }
+    Endpoint endpoint = (Endpoint) o;
+    return port == endpoint.port && Objects.equals(host, endpoint.host);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(host, port);
+  }
+
+  @Override
+  public String toString() {
+    return host + ":" + port;
+  }
+}
@@ -0,0 +1,197 @@
+package org.iinegve.sftp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Picks endpoint for a new session out of the ones that serve the same files.
+ * <p>
+ * For every endpoint it keeps exponentially weighted moving averages of connect time, channel
+ * opening time and error rate. Both times are round trips that don't depend on what's
+ * transferred, so a big download doesn't make its endpoint look slow. New session goes to the
+ * endpoint with the lowest cost, that is latency inflated by error rate, and with spreading turned
+ * on also by number of sessions open or being opened there, so that transfers run over all the
+ * endpoints and aggregate their bandwidth.
+ * Endpoint that's never been tried costs nothing, so each of them gets measured, and among such
+ * endpoints spreading picks the one with fewer sessions.
+ * <p>
+ * Endpoint that failed to connect cools down, from a second up to a minute for consecutive
+ * failures. Cooling endpoints are tried last, so the client keeps working while any endpoint is
+ * up, and goes back to a recovered one once it cools down.
+ */
+class EndpointRouter {
+
+  private static final double ALPHA = 0.2;
+  private static final double ERROR_PENALTY = 4;
+  private static final long MIN_COOLDOWN_NANOS = Duration.ofSeconds(1).toNanos();
+  private static final long MAX_COOLDOWN_NANOS = Duration.ofMinutes(1).toNanos();
+
+  private final List<State> states;
+  private final boolean spread;
+  private final LongSupplier clock;
+  private final ToIntFunction<Endpoint> sessions;
+
+  EndpointRouter(List<Endpoint> endpoints, boolean spread, ToIntFunction<Endpoint> sessions) {
+    this(endpoints, spread, sessions, System::nanoTime);
+  }
+
+  EndpointRouter(List<Endpoint> endpoints, boolean spread, ToIntFunction<Endpoint> sessions,
+                 LongSupplier clock) {
+    this.states = endpoints.stream().map(State::new).collect(toList());
+    this.spread = spread;
+    this.sessions = sessions;
+    this.clock = clock;
+  }
+
+  /**
+   * Endpoints in the order to try them for a new session: available ones from the cheapest, then
+   * cooling ones from the one that cools down first.
+   */
+  List<Endpoint> order() {
+    long now = clock.getAsLong();
+    List<State> available = new ArrayList<>();
+    List<State> cooling = new ArrayList<>();
+    synchronized (this) {
+      for (State state : states) {
+        (now >= state.downUntil ? available : cooling).add(state);
+      }
+      Comparator<State> cheapest = Comparator.comparingDouble(this::cost);
+      available.sort(spread ? cheapest.thenComparingInt(this::load) : cheapest);
+      cooling.sort(Comparator.comparingLong(state -> state.downUntil));
+    }
+    List<Endpoint> order = new ArrayList<>();
+    available.forEach(state -> order.add(state.endpoint));
+    cooling.forEach(state -> order.add(state.endpoint));
+    return order;
+  }
+
+  /**
+   * Picks endpoint for the next attempt to open a session, the first one in {@link #order()} that
+   * is not tried yet, and counts it as having one more session until {@link #release(Endpoint)},
+   * so that sessions opened at the same time spread too.
+   *
+   * @return endpoint or null, when all of them are tried
+   */
+  synchronized Endpoint reserve(Collection<Endpoint> tried) {
+    for (Endpoint endpoint : order()) {
+      if (!tried.contains(endpoint)) {
+        state(endpoint).opening++;
+        return endpoint;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Attempt to open a session to reserved endpoint is over, whatever the outcome.
+   */
+  synchronized void release(Endpoint endpoint) {
+    State state = state(endpoint);
+    if (state != null) {
+      state.opening--;
+    }
+  }
+
+  synchronized void connected(Endpoint endpoint, long nanos) {
+    State state = state(endpoint);
+    if (state != null) {
+      state.connectNanos = latency(state.connectNanos, nanos);
+      state.errorRate = average(state.errorRate, 0);
+      state.failures = 0;
+      state.downUntil = Long.MIN_VALUE;
+    }
+  }
+
+  synchronized void connectFailed(Endpoint endpoint) {
+    State state = state(endpoint);
+    if (state != null) {
+      state.errorRate = average(state.errorRate, 1);
+      state.failures++;
+      long cooldown = MIN_COOLDOWN_NANOS << Math.min(state.failures - 1, 16);
+      state.downUntil = clock.getAsLong() + Math.min(cooldown, MAX_COOLDOWN_NANOS);
+    }
+  }
+
+  synchronized void channelOpened(Endpoint endpoint, long nanos) {
+    State state = state(endpoint);
+    if (state != null) {
+      state.channelNanos = latency(state.channelNanos, nanos);
+    }
+  }
+
+  /**
+   * Operation is done on a session to the endpoint, failed means connection failure, not an
+   * error like missing file.
+   */
+  synchronized void operation(Endpoint endpoint, boolean succeeded) {
+    State state = state(endpoint);
+    if (state != null) {
+      state.errorRate = average(state.errorRate, succeeded ? 0 : 1);
+    }
+  }
+
+  List<EndpointStats> stats() {
+    long now = clock.getAsLong();
+    List<EndpointStats> stats = new ArrayList<>();
+    synchronized (this) {
+      for (State state : states) {
+        stats.add(new EndpointStats(state.endpoint,
+          Duration.ofNanos((long) state.connectNanos),
+          Duration.ofNanos((long) state.channelNanos),
+          state.errorRate, sessions.applyAsInt(state.endpoint), now >= state.downUntil));
+      }
+    }
+    return stats;
+  }
+
+  private double cost(State state) {
+    double latency = state.connectNanos + state.channelNanos;
+    double cost = latency * (1 + ERROR_PENALTY * state.errorRate);
+    return spread ? cost * (1 + load(state)) : cost;
+  }
+
+  private int load(State state) {
+    return sessions.applyAsInt(state.endpoint) + state.opening;
+  }
+
+  private State state(Endpoint endpoint) {
+    for (State state : states) {
+      if (state.endpoint.equals(endpoint)) {
+        return state;
+      }
+    }
+    return null;
+  }
+
+  private static double average(double average, double value) {
+    return average + ALPHA * (value - average);
+  }
+
+  /**
+   * Average that starts with the first value, for latencies, where zero means not measured yet.
+   */
+  private static double latency(double average, double value) {
+    return average == 0 ? value : average(average, value);
+  }
+
+  private static class State {
+    private final Endpoint endpoint;
+    private double connectNanos;
+    private double channelNanos;
+    private double errorRate;
+    private int failures;
+    private int opening;
+    private long downUntil = Long.MIN_VALUE;
+
+    private State(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.iinegve.sftp;
+
+import java.time.Duration;
+
+/**
+ * What the client knows about an endpoint at the moment: moving averages of its latency and
+ * error rate, that are used to route new sessions.
+ */
+public final class EndpointStats {
+
+  private final Endpoint endpoint;
+  private final Duration connectLatency;
+  private final Duration channelLatency;
+  private final double errorRate;
+  private final int sessions;
+  private final boolean available;
+
+  EndpointStats(Endpoint endpoint, Duration connectLatency, Duration channelLatency,
+                double errorRate, int sessions, boolean available) {
+    this.endpoint = endpoint;
+    this.connectLatency = connectLatency;
+    this.channelLatency = channelLatency;
+    this.errorRate = errorRate;
+    this.sessions = sessions;
+    this.available = available;
+  }
+
+  public Endpoint endpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Moving average of session opening time, zero until the first session is opened.
+   */
+  public Duration connectLatency() {
+    return connectLatency;
+  }
+
+  /**
+   * Moving average of sftp channel opening time, zero until the first channel is opened.
+   */
+  public Duration channelLatency() {
+    return channelLatency;
+  }
+
+  /**
+   * Moving average of share of failed connects and operations, between 0 and 1.
+   */
+  public double errorRate() {
+    return errorRate;
+  }
+
+  /**
+   * Number of open sessions to the endpoint.
+   */
+  public int sessions() {
+    return sessions;
+  }
+
+  /**
+   * False while endpoint cools down after failed connect, it's tried only when all the others
+   * fail too.
+   */
+  public boolean isAvailable() {
+    return available;
+  }
+
+  @Override
+  public String toString() {
+    return "EndpointStats{endpoint=" + endpoint
+      + ", connectLatency=" + connectLatency.toMillis() + "ms"
+      + ", channelLatency=" + channelLatency.toMillis() + "ms"
+      + ", errorRate=" + String.format("%.3f", errorRate)
+      + ", sessions=" + sessions
+      + ", available=" + available + "}";
+  }
+}
@@ -0,0 +1,108 @@
+package org.iinegve.sftp;
+
+import java.time.Instant;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Ready to use filters for directory listing. Filters are applied as entries come from the server,
+ * before anything is retained.
+ */
+public final class Filters {
+
+  private Filters() {
+  }
+
+  /**
+   * Matches file names against glob pattern, where {@code *} is any number of characters, {@code
+   * ?} is a single character, {@code [abc]} or {@code [a-c]} is one of the given characters and
+   * {@code [!abc]} is any character but those. {@code ]} right after the opening bracket is one of
+   * the characters, and {@code [} that is never closed matches itself, like in shell.
+   */
+  public static Predicate<String> glob(String pattern) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      int end;
+      if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else if (c == '[' && (end = closingBracket(pattern, i)) > 0) {
+        regex.append(characterClass(pattern.substring(i + 1, end)));
+        i = end;
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+    return name -> compiled.matcher(name).matches();
+  }
+
+  /**
+   * Applies file name filter, for example {@link #glob(String)}, to listed file.
+   */
+  public static Predicate<RemoteFile> name(Predicate<String> nameFilter) {
+    return file -> nameFilter.test(file.name());
+  }
+
+  public static Predicate<RemoteFile> modifiedAfter(Instant instant) {
+    return file -> file.modifiedAt().isAfter(instant);
+  }
+
+  public static Predicate<RemoteFile> modifiedBefore(Instant instant) {
+    return file -> file.modifiedAt().isBefore(instant);
+  }
+
+  public static Predicate<RemoteFile> largerThan(long bytes) {
+    return file -> file.size() > bytes;
+  }
+
+  public static Predicate<RemoteFile> nonEmpty() {
+    return largerThan(0);
+  }
+
+  public static Predicate<RemoteFile> regularFiles() {
+    return RemoteFile::isRegularFile;
+  }
+
+  public static Predicate<RemoteFile> directories() {
+    return RemoteFile::isDirectory;
+  }
+
+  /**
+   * Position of {@code ]} that closes glob character class opened at given position, or -1 when
+   * it's not closed.
+   */
+  private static int closingBracket(String pattern, int open) {
+    int from = open + 1;
+    if (from < pattern.length() && pattern.charAt(from) == '!') {
+      from++;
+    }
+    if (from < pattern.length() && pattern.charAt(from) == ']') {
+      from++;
+    }
+    return pattern.indexOf(']', from);
+  }
+
+  /**
+   * Regex character class of glob one, without brackets. Everything but ranges is escaped, so
+   * that regex syntax like {@code &&} or nested classes doesn't apply.
+   */
+  private static String characterClass(String chars) {
+    StringBuilder regex = new StringBuilder("[");
+    int from = 0;
+    if (chars.startsWith("!")) {
+      regex.append('^');
+      from = 1;
+    }
+    for (int i = from; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (c != '-' && !Character.isLetterOrDigit(c)) {
+        regex.append('\\');
+      }
+      regex.append(c);
+    }
+    return regex.append(']').toString();
+  }
+}
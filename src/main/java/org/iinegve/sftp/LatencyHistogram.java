@@ -0,0 +1,99 @@
+package org.iinegve.sftp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in the spirit of HdrHistogram: fixed memory, lock free recording and
+ * relative error within about 3% at any magnitude, from nanoseconds to hours.
+ * <p>
+ * Value is put into a bucket by its highest bit, that is power of two, and then by the next
+ * {@value #SUB_BUCKET_BITS} bits, which splits every power of two into {@value #SUB_BUCKETS}
+ * linear buckets. Values below {@value #SUB_BUCKETS} have bucket of their own.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(index(value));
+    total.incrementAndGet();
+    sum.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long count() {
+    return total.get();
+  }
+
+  public long maxNanos() {
+    return max.get();
+  }
+
+  public double meanNanos() {
+    long count = total.get();
+    return count == 0 ? 0 : (double) sum.get() / count;
+  }
+
+  /**
+   * Value that given part of recorded values doesn't exceed, zero when nothing is recorded.
+   * <p>
+   * @param percentile from 0 to 100, for example 99.9
+   */
+  public long percentileNanos(double percentile) {
+    long count = total.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count()
+      + ", mean=" + millis((long) meanNanos())
+      + ", p50=" + millis(percentileNanos(50))
+      + ", p99=" + millis(percentileNanos(99))
+      + ", max=" + millis(maxNanos());
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Highest value that falls into a bucket.
+   */
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
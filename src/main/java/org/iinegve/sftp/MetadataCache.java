@@ -0,0 +1,211 @@
+package org.iinegve.sftp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of directory listings and file attributes keyed by absolute remote path.
+ * <p>
+ * Entries live for {@code ttl}, the least recently used ones are evicted above {@code
+ * maxEntries}. Concurrent misses of the same key share a single request to the server. Changes made
+ * through the client invalidate affected paths, and a load that raced with invalidation is not
+ * stored, so the cache never gets older content than the change.
+ */
+class MetadataCache {
+
+  private static final String LISTING = "ls:";
+  private static final String STAT = "stat:";
+
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final Map<String, Entry> entries;
+  private final NavigableSet<String> paths = new TreeSet<>();
+  private final Map<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  MetadataCache(Duration ttl, int maxEntries) {
+    this.ttlNanos = ttl.toNanos();
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > MetadataCache.this.maxEntries) {
+          evictions.incrementAndGet();
+          String path = path(eldest.getKey());
+          String other = eldest.getKey().startsWith(LISTING) ? STAT + path : LISTING + path;
+          if (!containsKey(other)) {
+            paths.remove(path);
+          }
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  <V> V listing(String dir, Supplier<V> loader) {
+    return get(LISTING + dir, loader);
+  }
+
+  <V> V listingIfPresent(String dir) {
+    return getIfPresent(LISTING + dir);
+  }
+
+  <V> V stat(String path, Supplier<V> loader) {
+    return get(STAT + path, loader);
+  }
+
+  <V> V statIfPresent(String path) {
+    return getIfPresent(STAT + path);
+  }
+
+  /**
+   * Drops everything that might have changed together with the path: its attributes, its listing
+   * when it's a directory, listing of its parent directory and everything underneath it. Cached
+   * paths are kept sorted, so everything underneath is a range and other entries are not looked
+   * at.
+   */
+  void invalidate(String path) {
+    generation.incrementAndGet();
+    String parent = parent(path);
+    String prefix = path.endsWith("/") ? path : path + "/";
+    synchronized (entries) {
+      remove(path);
+      paths.remove(path);
+      Iterator<String> underneath =
+        paths.subSet(prefix, prefix.substring(0, prefix.length() - 1) + '0').iterator();
+      while (underneath.hasNext()) {
+        remove(underneath.next());
+        underneath.remove();
+      }
+      entries.remove(LISTING + parent);
+      if (!entries.containsKey(STAT + parent)) {
+        paths.remove(parent);
+      }
+    }
+  }
+
+  /**
+   * Must be called under the lock.
+   */
+  private void remove(String path) {
+    entries.remove(LISTING + path);
+    entries.remove(STAT + path);
+  }
+
+  CacheStats stats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    return new CacheStats(hits.get(), misses.get(), coalesced.get(), evictions.get(), size);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> V getIfPresent(String key) {
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null && System.nanoTime() - entry.loadedAt <= ttlNanos) {
+        hits.incrementAndGet();
+        return (V) entry.value;
+      }
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> V get(String key, Supplier<V> loader) {
+    V cached = getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    CompletableFuture<Object> load = new CompletableFuture<>();
+    CompletableFuture<Object> inFlight = loading.putIfAbsent(key, load);
+    if (inFlight != null) {
+      coalesced.incrementAndGet();
+      try {
+        return (V) inFlight.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause() : new SftpClientException(e.getCause());
+      }
+    }
+
+    misses.incrementAndGet();
+    long startedAt = generation.get();
+    try {
+      V value = loader.get();
+      synchronized (entries) {
+        if (generation.get() == startedAt) {
+          entries.put(key, new Entry(value, System.nanoTime()));
+          paths.add(path(key));
+        }
+      }
+      load.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(key, load);
+    }
+  }
+
+  private static String path(String key) {
+    return key.substring(key.indexOf(':') + 1);
+  }
+
+  private static String parent(String path) {
+    int slash = path.lastIndexOf('/');
+    return slash <= 0 ? "/" : path.substring(0, slash);
+  }
+
+  /**
+   * Makes absolute normalized path out of the one relative to home directory: resolves {@code .}
+   * and {@code ..}, removes repeated and trailing slashes.
+   */
+  static String normalize(String home, String path) {
+    String absolute = path.startsWith("/") ? path : home + "/" + path;
+    List<String> segments = new ArrayList<>();
+    for (String segment : absolute.split("/")) {
+      if (segment.isEmpty() || segment.equals(".")) {
+        continue;
+      }
+      if (segment.equals("..")) {
+        if (!segments.isEmpty()) {
+          segments.remove(segments.size() - 1);
+        }
+      } else {
+        segments.add(segment);
+      }
+    }
+    return "/" + String.join("/", segments);
+  }
+
+  private static class Entry {
+    private final Object value;
+    private final long loadedAt;
+
+    private Entry(Object value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.iinegve.sftp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs batch operations with bounded parallelism. Each batch gets its own threads, which are gone
+ * as soon as the batch is done, so nothing is left behind between batches.
+ */
+final class Parallel {
+
+  private static final AtomicInteger batchCount = new AtomicInteger();
+
+  private Parallel() {
+  }
+
+  /**
+   * Applies function to every item using up to {@code parallelism} threads.
+   * <p>
+   * @return results in the same order as items
+   */
+  static <T, R> List<R> map(Collection<T> items, int parallelism, Function<T, R> fn) {
+    if (items.isEmpty()) {
+      return new ArrayList<>();
+    }
+    int threads = Math.min(parallelism, items.size());
+    if (threads <= 1) {
+      List<R> results = new ArrayList<>(items.size());
+      items.forEach(item -> results.add(fn.apply(item)));
+      return results;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads("sftp-batch"));
+    try {
+      List<Future<R>> futures = new ArrayList<>(items.size());
+      items.forEach(item -> futures.add(executor.submit(() -> fn.apply(item))));
+      List<R> results = new ArrayList<>(items.size());
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SftpClientException(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof SftpClientException
+        ? (SftpClientException) e.getCause() : new SftpClientException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  static ThreadFactory daemonThreads(String prefix) {
+    String batchPrefix = prefix + "-" + batchCount.incrementAndGet() + "-";
+    AtomicInteger threadCount = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, batchPrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
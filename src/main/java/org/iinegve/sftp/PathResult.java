@@ -0,0 +1,59 @@
+package org.iinegve.sftp;
+
+import java.util.Optional;
+
+/**
+ * Outcome of an operation on a single remote path within a batch, for example, deletion.
+ */
+public final class PathResult {
+
+  public enum Outcome {
+    /**
+     * Operation is done.
+     */
+    DONE,
+    /**
+     * Path doesn't exist on sftp.
+     */
+    MISSING,
+    /**
+     * Operation failed for other reason, see {@link #error()}.
+     */
+    FAILED
+  }
+
+  private final String path;
+  private final Outcome outcome;
+  private final Exception error;
+
+  PathResult(String path, Outcome outcome, Exception error) {
+    this.path = path;
+    this.outcome = outcome;
+    this.error = error;
+  }
+
+  public String path() {
+    return path;
+  }
+
+  public Outcome outcome() {
+    return outcome;
+  }
+
+  public boolean isDone() {
+    return outcome == Outcome.DONE;
+  }
+
+  /**
+   * Error given by sftp, present when outcome is either missing or failed.
+   */
+  public Optional<Exception> error() {
+    return Optional.ofNullable(error);
+  }
+
+  @Override
+  public String toString() {
+    return "PathResult{" + path + ", " + outcome
+      + (error == null ? "" : ", error=" + error.getMessage()) + "}";
+  }
+}
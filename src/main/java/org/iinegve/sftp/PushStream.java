@@ -0,0 +1,129 @@
+package org.iinegve.sftp;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Turns push style producer, like JSch directory listing that calls a selector for every entry,
+ * into a lazy stream. Producer runs on its own thread and hands items over a bounded queue, so it
+ * stays at most {@code capacity} items ahead of the consumer.
+ * <p>
+ * Closing the stream tells producer to stop: {@link Sink#accept(Object)} starts returning false.
+ * Stream that is not read till the end must be closed, otherwise producer waits for the consumer
+ * forever.
+ */
+final class PushStream {
+
+  private static final Object END = new Object();
+  private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+  private PushStream() {
+  }
+
+  static <T> Stream<T> of(String name, int capacity, Producer<T> producer) {
+    BlockingQueue<Object> queue = new ArrayBlockingQueue<>(capacity);
+    AtomicBoolean closed = new AtomicBoolean();
+
+    Thread thread = Parallel.daemonThreads(name).newThread(() -> {
+      Object last = END;
+      try {
+        producer.produce(item -> offer(queue, closed, item));
+      } catch (Throwable e) {
+        last = new Failure(e);
+      }
+      offer(queue, closed, last);
+    });
+    thread.start();
+
+    Iterator<T> it = new Iterator<T>() {
+      private Object next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null) {
+          next = take(queue);
+        }
+        if (next instanceof Failure) {
+          Throwable cause = ((Failure) next).cause;
+          next = END;
+          throw cause instanceof SftpClientException
+            ? (SftpClientException) cause : new SftpClientException(cause);
+        }
+        return next != END;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        T item = (T) next;
+        next = null;
+        return item;
+      }
+    };
+
+    return StreamSupport
+      .stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL),
+        false)
+      .onClose(() -> {
+        closed.set(true);
+        queue.clear();
+      });
+  }
+
+  private static boolean offer(BlockingQueue<Object> queue, AtomicBoolean closed, Object item) {
+    try {
+      while (!closed.get()) {
+        if (queue.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static Object take(BlockingQueue<Object> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SftpClientException(e);
+    }
+  }
+
+  @FunctionalInterface
+  interface Producer<T> {
+    void produce(Sink<T> sink) throws Exception;
+  }
+
+  @FunctionalInterface
+  interface Sink<T> {
+    /**
+     * Hands item over to the consumer, waiting while the queue is full.
+     * <p>
+     * @return false when consumer closed the stream and producer should stop
+     */
+    boolean accept(T item);
+  }
+
+  private static class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+}
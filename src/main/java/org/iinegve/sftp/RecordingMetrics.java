@@ -0,0 +1,200 @@
+package org.iinegve.sftp;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics kept in memory: latency histogram, failures, retries and bytes per operation, and
+ * session and channel opening times.
+ * <pre>{@code
+ * RecordingMetrics metrics = new RecordingMetrics();
+ * SftpClient sftp = sftpClient()
+ *     ...
+ *     .metrics(metrics)
+ *     .build();
+ * ...
+ * log.info("sftp: {}", metrics);
+ * }</pre>
+ */
+public class RecordingMetrics implements SftpMetrics {
+
+  private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+  private final LatencyHistogram sessionOpening = new LatencyHistogram();
+  private final LatencyHistogram channelOpening = new LatencyHistogram();
+  private final AtomicLong sessionFailures = new AtomicLong();
+  private final AtomicLong channelFailures = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong compressedWireBytes = new AtomicLong();
+  private volatile IntSupplier sessions = () -> 0;
+  private volatile IntSupplier leasedChannels = () -> 0;
+
+  @Override
+  public void operation(String operation, long nanos, boolean succeeded) {
+    OperationStats stats = stats(operation);
+    stats.latency.record(nanos);
+    if (!succeeded) {
+      stats.failures.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void bytesTransferred(String operation, long bytes) {
+    stats(operation).bytes.addAndGet(bytes);
+  }
+
+  @Override
+  public void compression(String operation, boolean compressed, long bytes, long nanos) {
+    OperationStats stats = stats(operation);
+    if (compressed) {
+      stats.compressedBytes.addAndGet(bytes);
+    }
+  }
+
+  @Override
+  public void compressedWireBytes(long bytes) {
+    compressedWireBytes.addAndGet(bytes);
+  }
+
+  @Override
+  public void retry(String operation, Throwable cause) {
+    stats(operation).retries.incrementAndGet();
+  }
+
+  @Override
+  public void sessionOpened(long nanos, boolean succeeded) {
+    sessionOpening.record(nanos);
+    if (!succeeded) {
+      sessionFailures.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void reconnect() {
+    reconnects.incrementAndGet();
+  }
+
+  @Override
+  public void channelOpened(long nanos, boolean succeeded) {
+    channelOpening.record(nanos);
+    if (!succeeded) {
+      channelFailures.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void poolGauges(IntSupplier sessions, IntSupplier leasedChannels) {
+    this.sessions = sessions;
+    this.leasedChannels = leasedChannels;
+  }
+
+  /**
+   * Latency of operation, including failed ones.
+   */
+  public LatencyHistogram latency(String operation) {
+    return stats(operation).latency;
+  }
+
+  public long failures(String operation) {
+    return stats(operation).failures.get();
+  }
+
+  public long retries(String operation) {
+    return stats(operation).retries.get();
+  }
+
+  public long bytes(String operation) {
+    return stats(operation).bytes.get();
+  }
+
+  /**
+   * Bytes of files transferred over compressed sessions.
+   */
+  public long compressedBytes(String operation) {
+    return stats(operation).compressedBytes.get();
+  }
+
+  /**
+   * Bytes read from and written to sockets of compressed sessions.
+   */
+  public long compressedWireBytes() {
+    return compressedWireBytes.get();
+  }
+
+  /**
+   * Bytes of files transferred over compressed sessions per byte that went over their sockets.
+   * Wire bytes include handshakes, failed transfers and, when all the sessions are compressed,
+   * every other operation too, so it's the lower bound of what compression achieves on files. NaN
+   * until anything goes over compressed session.
+   */
+  public double compressionRatio() {
+    long wire = compressedWireBytes.get();
+    long files = operations.values().stream().mapToLong(stats -> stats.compressedBytes.get()).sum();
+    return wire == 0 ? Double.NaN : (double) files / wire;
+  }
+
+  public LatencyHistogram sessionOpening() {
+    return sessionOpening;
+  }
+
+  public long sessionFailures() {
+    return sessionFailures.get();
+  }
+
+  public LatencyHistogram channelOpening() {
+    return channelOpening;
+  }
+
+  public long channelFailures() {
+    return channelFailures.get();
+  }
+
+  public long reconnects() {
+    return reconnects.get();
+  }
+
+  public int sessions() {
+    return sessions.getAsInt();
+  }
+
+  public int leasedChannels() {
+    return leasedChannels.getAsInt();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("RecordingMetrics{");
+    new TreeMap<>(operations).forEach((operation, stats) -> sb.append(operation)
+      .append("=[").append(stats.latency)
+      .append(", failures=").append(stats.failures)
+      .append(", retries=").append(stats.retries)
+      .append(", bytes=").append(stats.bytes)
+      .append(stats.compressedBytes.get() > 0
+        ? ", compressedBytes=" + stats.compressedBytes : "")
+      .append("], "));
+    return sb.append("sessionOpening=[").append(sessionOpening)
+      .append(", failures=").append(sessionFailures)
+      .append("], channelOpening=[").append(channelOpening)
+      .append(", failures=").append(channelFailures)
+      .append("], reconnects=").append(reconnects)
+      .append(", sessions=").append(sessions())
+      .append(", leasedChannels=").append(leasedChannels())
+      .append(compressedWireBytes.get() > 0
+        ? String.format(", compressionRatio=%.2f", compressionRatio()) : "")
+      .append('}').toString();
+  }
+
+  private OperationStats stats(String operation) {
+    return operations.computeIfAbsent(operation, op -> new OperationStats());
+  }
+
+  private static class OperationStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+  }
+}
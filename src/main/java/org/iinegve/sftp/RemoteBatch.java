@@ -0,0 +1,159 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Runs the same short operation, like delete or rename, on many remote paths.
+ * <p>
+ * Every operation waits for its reply, so time of a batch is dominated by round trips. To have
+ * many requests in flight, there are {@code parallelism} workers, each one on its own pooled
+ * channel, taking the next path as soon as they are done with the previous one. Failure of one
+ * path doesn't stop the batch, it becomes a result of that path. Path is tried again according
+ * to retry policy, and when the channel is gone the worker goes on with a fresh one. Reopening
+ * the channel is retried according to the same policy, when it doesn't work out the worker gives
+ * up, and paths nobody has got to become failed, so that a batch doesn't hang while server is
+ * down.
+ */
+class RemoteBatch<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(RemoteBatch.class);
+
+  private final SftpClient sftp;
+  private final String operation;
+  private final Function<T, String> path;
+  private final ItemOp<T> op;
+
+  RemoteBatch(SftpClient sftp, String operation, Function<T, String> path, ItemOp<T> op) {
+    this.sftp = sftp;
+    this.operation = operation;
+    this.path = path;
+    this.op = op;
+  }
+
+  BatchReport run(List<T> items, int parallelism) {
+    long started = System.nanoTime();
+    if (items.isEmpty()) {
+      return new BatchReport(new ArrayList<>(), Duration.ZERO);
+    }
+    PathResult[] results = new PathResult[items.size()];
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Exception> lastError = new AtomicReference<>();
+
+    int workers = Math.min(parallelism, items.size());
+    Parallel.map(IntStream.range(0, workers).boxed().collect(toList()), workers, worker -> {
+      work(items, results, next, lastError);
+      return null;
+    });
+
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        results[i] = new PathResult(path.apply(items.get(i)), PathResult.Outcome.FAILED,
+          lastError.get());
+      }
+    }
+    return new BatchReport(new ArrayList<>(Arrays.asList(results)),
+      Duration.ofNanos(System.nanoTime() - started));
+  }
+
+  private void work(List<T> items, PathResult[] results, AtomicInteger next,
+                    AtomicReference<Exception> lastError) {
+    int[] pending = {-1};
+    int[] tries = {0};
+    long[] since = {0};
+    int reconnects = 0;
+    long outageStarted = 0;
+    int failedItem = -1;
+    while (true) {
+      try {
+        sftp.doInSftpOnce("batch", channel -> {
+          drain(channel, items, results, next, pending, tries, since);
+          return null;
+        });
+        return;
+      } catch (SftpClientException e) {
+        lastError.set(e);
+        if (pending[0] < 0) {
+          log.warn("Batch worker stopped, as there is no channel: [{}]", e.getMessage());
+          return;
+        }
+        if (pending[0] != failedItem) {
+          failedItem = pending[0];
+          reconnects = 0;
+          outageStarted = System.nanoTime();
+        }
+        Duration backoff =
+          sftp.retryPolicy().backoff(++reconnects, e, System.nanoTime() - outageStarted);
+        if (backoff == null) {
+          log.warn("Batch worker stopped, as channel cannot be reopened: [{}]", e.getMessage());
+          T item = items.get(pending[0]);
+          results[pending[0]] = new PathResult(path.apply(item), PathResult.Outcome.FAILED, e);
+          return;
+        }
+        log.debug("Channel is gone, going on with a fresh one in [{}] ms", backoff.toMillis());
+        SftpClient.sleep(backoff);
+      }
+    }
+  }
+
+  /**
+   * Applies operation to the pending item, if there is one left from previous channel, and then
+   * to the items nobody has taken yet.
+   */
+  private void drain(ChannelSftp channel, List<T> items, PathResult[] results,
+                     AtomicInteger next, int[] pending, int[] tries, long[] since) {
+    int i;
+    while ((i = pending[0] >= 0 ? pending[0] : next.getAndIncrement()) < items.size()) {
+      if (pending[0] < 0) {
+        since[0] = System.nanoTime();
+      }
+      pending[0] = i;
+      T item = items.get(i);
+      try {
+        op.process(channel, item);
+        results[i] = new PathResult(path.apply(item), PathResult.Outcome.DONE, null);
+      } catch (Exception e) {
+        if (e instanceof SftpException
+          && ((SftpException) e).id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+          results[i] = new PathResult(path.apply(item), PathResult.Outcome.MISSING, e);
+        } else {
+          Duration backoff =
+            sftp.retryPolicy().backoff(++tries[0], e, System.nanoTime() - since[0]);
+          if (backoff == null) {
+            log.warn("Cannot process [{}]: [{}]", path.apply(item), e.getMessage());
+            results[i] = new PathResult(path.apply(item), PathResult.Outcome.FAILED, e);
+          } else {
+            sftp.metrics().retry(operation, e);
+            SftpClient.sleep(backoff);
+            if (RetryPolicy.isTransportFailure(e) || !channel.isConnected()) {
+              throw new SftpClientException(e);
+            }
+            continue;
+          }
+        }
+      }
+      sftp.metrics().operation(operation, System.nanoTime() - since[0],
+        results[i].outcome() != PathResult.Outcome.FAILED);
+      pending[0] = -1;
+      tries[0] = 0;
+    }
+  }
+
+  @FunctionalInterface
+  interface ItemOp<T> {
+    void process(ChannelSftp channel, T item) throws SftpException;
+  }
+}
@@ -0,0 +1,166 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp.LsEntry;
+import com.jcraft.jsch.SftpATTRS;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of a remote file attributes as server sent them in directory listing, so
+ * there is no need for a separate stat call per file.
+ */
+public final class RemoteFile {
+
+  private final String path;
+  private final String name;
+  private final long size;
+  private final Instant modifiedAt;
+  private final int permissions;
+  private final boolean directory;
+  private final boolean link;
+
+  RemoteFile(String path, String name, long size, Instant modifiedAt, int permissions,
+             boolean directory, boolean link) {
+    this.path = path;
+    this.name = name;
+    this.size = size;
+    this.modifiedAt = modifiedAt;
+    this.permissions = permissions;
+    this.directory = directory;
+    this.link = link;
+  }
+
+  static RemoteFile of(String dir, LsEntry entry) {
+    return of(dir, entry.getFilename(), entry.getAttrs());
+  }
+
+  static RemoteFile of(String dir, String name, SftpATTRS attrs) {
+    return create(join(dir, name), name, attrs);
+  }
+
+  /**
+   * Attributes of a file that's got by its path rather than listing, name is the last segment of
+   * the path.
+   */
+  static RemoteFile at(String path, SftpATTRS attrs) {
+    return create(path, name(path), attrs);
+  }
+
+  private static RemoteFile create(String path, String name, SftpATTRS attrs) {
+    return new RemoteFile(path, name, attrs.getSize(),
+      Instant.ofEpochSecond(Integer.toUnsignedLong(attrs.getMTime())),
+      attrs.getPermissions() & 07777, attrs.isDir(), attrs.isLink());
+  }
+
+  /**
+   * Same file with a given path, as cached attributes might be loaded by another caller that
+   * spelled the path differently.
+   */
+  RemoteFile withPath(String newPath) {
+    if (newPath.equals(path)) {
+      return this;
+    }
+    return new RemoteFile(newPath, name(newPath), size, modifiedAt, permissions, directory, link);
+  }
+
+  private static String name(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  /**
+   * Same file with path relative to the given directory, as cached listing might be loaded by
+   * another caller that spelled the directory differently.
+   */
+  RemoteFile inDirectory(String dir) {
+    String newPath = join(dir, name);
+    return newPath.equals(path)
+      ? this : new RemoteFile(newPath, name, size, modifiedAt, permissions, directory, link);
+  }
+
+  static String join(String dir, String name) {
+    return dir.endsWith("/") ? dir + name : dir + "/" + name;
+  }
+
+  /**
+   * Directory of a path, {@code .} for a path without directory.
+   */
+  static String parent(String path) {
+    int slash = path.lastIndexOf('/');
+    if (slash < 0) {
+      return ".";
+    }
+    return slash == 0 ? "/" : path.substring(0, slash);
+  }
+
+  /**
+   * Path of the file, that is listed directory joined with file name.
+   */
+  public String path() {
+    return path;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Modification time with seconds precision, as sftp protocol keeps it.
+   */
+  public Instant modifiedAt() {
+    return modifiedAt;
+  }
+
+  /**
+   * Permission bits, for example, {@code 0644}.
+   */
+  public int permissions() {
+    return permissions;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  public boolean isLink() {
+    return link;
+  }
+
+  public boolean isRegularFile() {
+    return !directory && !link;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RemoteFile)) {
+      return false;
+    }
+    RemoteFile that = (RemoteFile) o;
+    return size == that.size
+      && permissions == that.permissions
+      && directory == that.directory
+      && link == that.link
+      && path.equals(that.path)
+      && name.equals(that.name)
+      && modifiedAt.equals(that.modifiedAt);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, size, modifiedAt);
+  }
+
+  @Override
+  public String toString() {
+    return "RemoteFile{" + path + ", size=" + size + ", modifiedAt=" + modifiedAt
+      + ", permissions=" + Integer.toOctalString(permissions)
+      + (directory ? ", directory" : "") + (link ? ", link" : "") + "}";
+  }
+}
@@ -0,0 +1,195 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Transfers that continue from the last confirmed offset instead of starting over.
+ * <p>
+ * Download goes into {@code <file>.part} next to the destination, and every few megabytes the
+ * written content is flushed to disk and the offset is recorded in {@code <file>.part.checkpoint}.
+ * Upload goes into {@code <file>.part} on sftp, server keeps what it received, so the offset is
+ * the size of remote partial file. In both cases the partial file is renamed to the destination
+ * only when it's complete.
+ * <p>
+ * Each attempt takes a new channel from the pool, so a dead channel or session is not tried again.
+ */
+class ResumableTransfer {
+
+  private static final Logger log = LoggerFactory.getLogger(ResumableTransfer.class);
+
+  private static final long CHECKPOINT_INTERVAL = 8L * 1024 * 1024;
+
+  private final SftpClient sftp;
+  private final int attempts;
+
+  ResumableTransfer(SftpClient sftp, int attempts) {
+    this.sftp = sftp;
+    this.attempts = attempts;
+  }
+
+  File download(String remoteFilePath, File localFile) {
+    SftpATTRS attrs = sftp.doInSftp("stat", channel -> {
+      return channel.stat(remoteFilePath);
+    });
+    long size = attrs.getSize();
+    long mtime = Integer.toUnsignedLong(attrs.getMTime());
+
+    File part = new File(localFile.getPath() + ".part");
+    File checkpointFile = new File(localFile.getPath() + ".part.checkpoint");
+    Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+    long offset = 0;
+    if (checkpoint != null && checkpoint.isOf(remoteFilePath, size, mtime)
+      && part.length() >= checkpoint.offset()) {
+      offset = checkpoint.offset();
+      log.info("Resuming download of [{}] from [{}] of [{}] bytes", remoteFilePath, offset, size);
+    } else {
+      checkpoint = new Checkpoint(remoteFilePath, size, mtime, 0);
+      checkpoint.save(checkpointFile);
+    }
+
+    try (FileChannel out = FileChannel.open(part.toPath(), CREATE, WRITE)) {
+      out.truncate(offset);
+      AtomicLong written = new AtomicLong(offset);
+      Checkpoint base = checkpoint;
+      for (int attempt = 1; ; attempt++) {
+        try {
+          sftp.doInSftpOnce("download", channel -> {
+            long from = written.get();
+            try {
+              fetch(channel, remoteFilePath, out, written, size, base, checkpointFile);
+            } finally {
+              sftp.metrics().bytesTransferred("download", written.get() - from);
+            }
+            return null;
+          });
+          break;
+        } catch (SftpClientException e) {
+          if (attempt >= attempts || !sftp.retryPolicy().isRetryable(e)) {
+            base.at(written.get()).save(checkpointFile);
+            throw e;
+          }
+          Duration wait = sftp.retryPolicy().delay(attempt);
+          log.warn("Download of [{}] failed at [{}] of [{}] bytes, resuming in [{}] ms",
+            remoteFilePath, written.get(), size, wait.toMillis());
+          SftpClient.sleep(wait);
+        }
+      }
+      out.force(true);
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+
+    try {
+      Files.move(part.toPath(), localFile.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+      Files.deleteIfExists(checkpointFile.toPath());
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+    return localFile;
+  }
+
+  void upload(File file, String remoteDir) {
+    String destination = remoteDir + "/" + file.getName();
+    String part = destination + ".part";
+    File checkpointFile = new File(file.getPath() + ".upload.checkpoint");
+    Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+    boolean resume = checkpoint != null
+      && checkpoint.isOf(destination, file.length(), file.lastModified());
+    if (resume) {
+      log.info("Resuming upload of [{}] to [{}]", file, destination);
+    } else {
+      new Checkpoint(destination, file.length(), file.lastModified(), 0).save(checkpointFile);
+    }
+
+    try {
+      for (int attempt = 1; ; attempt++) {
+        int mode = resume ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+        try {
+          sftp.doInSftpOnce("upload", channel -> {
+            channel.put(file.getAbsolutePath(), part, null, mode);
+            return null;
+          });
+          break;
+        } catch (SftpClientException e) {
+          if (attempt >= attempts || !sftp.retryPolicy().isRetryable(e)) {
+            throw e;
+          }
+          Duration wait = sftp.retryPolicy().delay(attempt);
+          log.warn("Upload of [{}] to [{}] failed, resuming in [{}] ms", file, destination,
+            wait.toMillis());
+          SftpClient.sleep(wait);
+          resume = true;
+        }
+      }
+
+      sftp.doInSftp("move", channel -> {
+        removeIfExists(channel, destination);
+        channel.rename(part, destination);
+      });
+    } finally {
+      sftp.invalidate(destination, part);
+    }
+
+    try {
+      Files.deleteIfExists(checkpointFile.toPath());
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  private void fetch(ChannelSftp channel, String remoteFilePath, FileChannel out,
+                     AtomicLong written, long size, Checkpoint checkpoint,
+                     File checkpointFile) throws SftpException {
+    byte[] buffer = new byte[sftp.copyBufferSize()];
+    long checkpointed = written.get();
+    try (InputStream in = channel.get(remoteFilePath, null, written.get())) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+        while (chunk.hasRemaining()) {
+          written.addAndGet(out.write(chunk, written.get()));
+        }
+        if (written.get() - checkpointed >= CHECKPOINT_INTERVAL) {
+          out.force(false);
+          checkpointed = written.get();
+          checkpoint.at(checkpointed).save(checkpointFile);
+        }
+      }
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+    if (written.get() != size) {
+      throw new SftpClientException(new IOException(
+        "Downloaded " + written.get() + " bytes of " + remoteFilePath + ", expected " + size));
+    }
+  }
+
+  private static void removeIfExists(ChannelSftp channel, String remotePath)
+    throws SftpException {
+    try {
+      channel.rm(remotePath);
+    } catch (SftpException e) {
+      if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+        throw e;
+      }
+    }
+  }
+}
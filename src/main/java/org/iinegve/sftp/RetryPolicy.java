@@ -0,0 +1,270 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether failed operation is tried again and how long to wait before that.
+ * <p>
+ * Wait grows exponentially from {@code initialBackoff} up to {@code maxBackoff}, and is randomly
+ * shortened by up to {@code jitter} of it, so that clients that failed at the same time don't come
+ * back at the same time. Operation is not tried again when it's been failing longer than {@code
+ * maxElapsed}, or when failure is not going to go away by itself: by default that's when file
+ * doesn't exist, permission is denied or operation is not supported by server.
+ * <pre>{@code
+ * RetryPolicy policy = RetryPolicy.retryPolicy()
+ *     .maxAttempts(5)
+ *     .initialBackoff(Duration.ofMillis(200))
+ *     .build();
+ * }</pre>
+ */
+public final class RetryPolicy {
+
+  private static final RetryPolicy NONE = retryPolicy().maxAttempts(1).build();
+
+  private final int maxAttempts;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final double multiplier;
+  private final double jitter;
+  private final Duration maxElapsed;
+  private final Set<Integer> nonRetryableIds;
+  private final List<Class<? extends Exception>> nonRetryableTypes;
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff = builder.maxBackoff;
+    this.multiplier = builder.multiplier;
+    this.jitter = builder.jitter;
+    this.maxElapsed = builder.maxElapsed;
+    this.nonRetryableIds = new HashSet<>(builder.nonRetryableIds);
+    this.nonRetryableTypes = new ArrayList<>(builder.nonRetryableTypes);
+  }
+
+  public static Builder retryPolicy() {
+    return new Builder();
+  }
+
+  /**
+   * Policy that doesn't retry at all.
+   */
+  public static RetryPolicy none() {
+    return NONE;
+  }
+
+  public int maxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * How long to wait before next attempt.
+   * <p>
+   * @param attempt   number of attempt that just failed, starting with 1
+   * @param failure   what the attempt failed with
+   * @param elapsedNanos time since the first attempt started
+   * @return wait before next attempt or null, when operation should not be tried again
+   */
+  Duration backoff(int attempt, Exception failure, long elapsedNanos) {
+    if (attempt >= maxAttempts || !isRetryable(failure)) {
+      return null;
+    }
+    Duration wait = delay(attempt);
+    if (elapsedNanos + wait.toNanos() > maxElapsed.toNanos()) {
+      return null;
+    }
+    return wait;
+  }
+
+  /**
+   * Wait after given attempt with jitter, regardless of whether there should be another attempt.
+   * It's for callers that count attempts on their own, like resumable transfers.
+   */
+  Duration delay(int attempt) {
+    double exponential = initialBackoff.toNanos() * Math.pow(multiplier, attempt - 1);
+    long nanos = (long) Math.min(exponential, maxBackoff.toNanos());
+    if (jitter > 0 && nanos > 0) {
+      nanos -= (long) (nanos * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+    return Duration.ofNanos(nanos);
+  }
+
+  /**
+   * Whether failure might go away when operation is tried again. Wrapped causes are looked at
+   * too, as operations wrap sftp errors into {@link SftpClientException}. Runtime exceptions that
+   * don't wrap any I/O, JSch or sftp error are programming errors and are never retried.
+   */
+  boolean isRetryable(Throwable failure) {
+    if (isProgrammingError(failure)) {
+      return false;
+    }
+    for (Throwable e = failure; e != null; e = e.getCause()) {
+      for (Class<? extends Exception> type : nonRetryableTypes) {
+        if (type.isInstance(e)) {
+          return false;
+        }
+      }
+      if (e instanceof SftpException && nonRetryableIds.contains(((SftpException) e).id)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether failure is about connection rather than about the operation, then the channel it
+   * happened on is not used anymore. Sftp status errors, like missing file, leave channel in a
+   * good shape, while I/O error in the middle of a transfer might leave unread data in it.
+   * Anything else, like {@link IllegalArgumentException} from caller code, is a programming
+   * error, it's neither retried on a fresh channel nor does it make the channel unusable.
+   */
+  static boolean isTransportFailure(Throwable failure) {
+    if (failure instanceof SftpClientException && failure.getCause() != null) {
+      return isTransportFailure(failure.getCause());
+    }
+    if (failure instanceof SftpException) {
+      SftpException e = (SftpException) failure;
+      return e.getCause() != null
+        || e.id == ChannelSftp.SSH_FX_NO_CONNECTION
+        || e.id == ChannelSftp.SSH_FX_CONNECTION_LOST;
+    }
+    return failure instanceof IOException || failure instanceof JSchException;
+  }
+
+  private static boolean isProgrammingError(Throwable failure) {
+    if (!(failure instanceof RuntimeException)) {
+      return false;
+    }
+    for (Throwable e = failure; e != null; e = e.getCause()) {
+      if (e instanceof IOException || e instanceof JSchException || e instanceof SftpException) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy{maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff
+      + ", maxBackoff=" + maxBackoff + ", multiplier=" + multiplier + ", jitter=" + jitter
+      + ", maxElapsed=" + maxElapsed + "}";
+  }
+
+  public static class Builder {
+    private int maxAttempts = 2;
+    private Duration initialBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(5);
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private Duration maxElapsed = Duration.ofSeconds(30);
+    private final Set<Integer> nonRetryableIds = new HashSet<>(Arrays.asList(
+      ChannelSftp.SSH_FX_NO_SUCH_FILE,
+      ChannelSftp.SSH_FX_PERMISSION_DENIED,
+      ChannelSftp.SSH_FX_OP_UNSUPPORTED));
+    private final List<Class<? extends Exception>> nonRetryableTypes = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    /**
+     * How many times operation is tried, including the first one. Default is 2.
+     */
+    public Builder maxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Wait before the second attempt. Default is 100 milliseconds.
+     */
+    public Builder initialBackoff(Duration initialBackoff) {
+      this.initialBackoff = initialBackoff;
+      return this;
+    }
+
+    /**
+     * Wait is never longer than that. Default is 5 seconds.
+     */
+    public Builder maxBackoff(Duration maxBackoff) {
+      this.maxBackoff = maxBackoff;
+      return this;
+    }
+
+    /**
+     * How many times wait grows after each attempt. Default is 2.
+     */
+    public Builder multiplier(double multiplier) {
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    /**
+     * Part of wait, from 0 to 1, that is randomly cut off. Default is 0.5.
+     */
+    public Builder jitter(double jitter) {
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * Operation is not tried again, when next attempt would start later than that after the
+     * first one. Default is 30 seconds.
+     */
+    public Builder maxElapsed(Duration maxElapsed) {
+      this.maxElapsed = maxElapsed;
+      return this;
+    }
+
+    /**
+     * Sftp status codes, see {@code ChannelSftp.SSH_FX_*}, that are not retried. Replaces the
+     * default ones, which are no such file, permission denied and operation unsupported.
+     */
+    public Builder nonRetryableIds(int... ids) {
+      nonRetryableIds.clear();
+      for (int id : ids) {
+        nonRetryableIds.add(id);
+      }
+      return this;
+    }
+
+    /**
+     * Exceptions that are not retried, when either failure or any of its causes is of that type.
+     * None by default.
+     */
+    @SafeVarargs
+    public final Builder nonRetryable(Class<? extends Exception>... types) {
+      nonRetryableTypes.addAll(Arrays.asList(types));
+      return this;
+    }
+
+    public RetryPolicy build() {
+      if (maxAttempts < 1) {
+        throw new IllegalArgumentException("Max attempts must be positive");
+      }
+      if (initialBackoff == null || initialBackoff.isNegative()
+        || maxBackoff == null || maxBackoff.isNegative()) {
+        throw new IllegalArgumentException("Backoff must not be neither null nor negative");
+      }
+      if (multiplier < 1) {
+        throw new IllegalArgumentException("Multiplier must not be less than 1");
+      }
+      if (jitter < 0 || jitter > 1) {
+        throw new IllegalArgumentException("Jitter must be between 0 and 1");
+      }
+      if (maxElapsed == null || maxElapsed.isNegative()) {
+        throw new IllegalArgumentException("Max elapsed must not be neither null nor negative");
+      }
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Bounded pool of ssh sessions shared by all the threads that use sftp client.
+ * <p>
+ * Session is not given out exclusively: each session multiplexes up to {@code
+ * maxChannelsPerSession} channels, so the pool hands out a channel on the least loaded session and
+ * opens another session only when all of the existing ones are busy. When there are {@code
+ * maxSessions} sessions and all of them are busy, borrowing waits up to {@code borrowTimeout} for a
+ * channel to be given back.
+ * <p>
+ * Sessions that are not used longer than {@code sessionIdleTimeout} are closed, but the pool never
+ * goes below {@code minSessions} that way.
+ * <p>
+ * With {@code keepAliveInterval} set, a background thread sends keepalive on idle sessions, so
+ * that server doesn't drop them, checks each with a round trip, drops the ones that don't answer
+ * within the interval and opens sessions back up to {@code minSessions}. That way a dead or hung
+ * session is found out and replaced before the next borrow has to do that. The thread starts with
+ * either {@link #start()} or the first borrow, and stops on {@link #close()}.
+ */
+class SessionPool {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionPool.class);
+
+  private final SessionFactory factory;
+  private final int minSessions;
+  private final int maxSessions;
+  private final int maxChannelsPerSession;
+  private final long borrowTimeoutNanos;
+  private final long idleTimeoutNanos;
+  private final boolean validateOnBorrow;
+  private final Duration channelIdleTimeout;
+  private final int maxIdleChannels;
+  private final Duration keepAliveInterval;
+  private final Duration probeTimeout;
+  private final SftpMetrics metrics;
+  private final TransferTuning tuning;
+  private final ObjLongConsumer<Endpoint> channelOpened;
+
+  private final List<PooledSession> sessions = new ArrayList<>();
+  private final ExecutorService probes =
+    Executors.newCachedThreadPool(Parallel.daemonThreads("sftp-probe"));
+  private int pendingSessions;
+  private ScheduledExecutorService maintenance;
+
+  SessionPool(SessionFactory factory, SftpClientBuilder settings) {
+    this(factory, settings, (endpoint, nanos) -> { });
+  }
+
+  /**
+   * @param channelOpened told how long it took to open each new channel, to route sessions by it
+   */
+  SessionPool(SessionFactory factory, SftpClientBuilder settings,
+              ObjLongConsumer<Endpoint> channelOpened) {
+    this.factory = factory;
+    this.minSessions = settings.minSessions;
+    this.maxSessions = settings.maxSessions;
+    this.maxChannelsPerSession = settings.maxChannelsPerSession;
+    this.borrowTimeoutNanos = settings.borrowTimeout.toNanos();
+    this.idleTimeoutNanos = settings.sessionIdleTimeout.toNanos();
+    this.validateOnBorrow = settings.validateOnBorrow;
+    this.channelIdleTimeout = settings.channelIdleTimeout;
+    this.maxIdleChannels = settings.maxIdleChannels;
+    this.keepAliveInterval = settings.keepAliveInterval;
+    this.probeTimeout = keepAliveInterval != null ? keepAliveInterval : settings.borrowTimeout;
+    this.metrics = settings.metrics;
+    this.tuning = new TransferTuning(settings);
+    this.channelOpened = channelOpened;
+  }
+
+  /**
+   * Opens sessions up to {@code minSessions}, but at least one, and starts background keepalive,
+   * when it's turned on.
+   */
+  void start() throws JSchException {
+    startMaintenance();
+    openMissing();
+  }
+
+  private void openMissing() throws JSchException {
+    int missing;
+    synchronized (this) {
+      missing = Math.max(minSessions, 1) - sessions.size() - pendingSessions;
+      pendingSessions += Math.max(missing, 0);
+    }
+    for (int i = 0; i < missing; i++) {
+      PooledSession session = null;
+      try {
+        session = newSession();
+      } finally {
+        synchronized (this) {
+          pendingSessions--;
+          if (session != null) {
+            sessions.add(session);
+          }
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gives a channel on one of the pooled sessions. When opening a channel fails, it's tried once
+   * more on another session. The session that failed is closed only when it's not connected
+   * anymore, otherwise it's kept, as server might just refuse one more channel while channels
+   * already open on the session are fine.
+   *
+   * @throws SftpClientException when no channel is given back within borrow timeout
+   */
+  ChannelLease borrow() throws JSchException {
+    startMaintenance();
+    PooledSession session = borrowSession(null);
+    try {
+      return new ChannelLease(this, session, session.cached.acquire());
+    } catch (Exception e) {
+      log.warn("Trying another session because of [{}]", e.getMessage());
+      giveBack(session);
+    }
+
+    PooledSession failed = session;
+    session = borrowSession(failed);
+    try {
+      return new ChannelLease(this, session, session.cached.acquire());
+    } catch (JSchException | RuntimeException e) {
+      giveBack(session);
+      throw e;
+    }
+  }
+
+  boolean isConnected() {
+    synchronized (this) {
+      return sessions.stream().anyMatch(s -> s.cached.isConnected());
+    }
+  }
+
+  /**
+   * Sends keepalive on idle sessions and checks them with a round trip, that has to be answered
+   * within keepalive interval, or borrow timeout when there is no interval. Sessions that failed
+   * it are dropped together with the ones that are not connected or idle for too long, and then
+   * sessions are opened up to minimum.
+   */
+  void maintain() {
+    List<PooledSession> idle = new ArrayList<>();
+    List<PooledSession> dropped = new ArrayList<>();
+    synchronized (this) {
+      evict(dropped);
+      sessions.stream().filter(s -> s.leases == 0).forEach(idle::add);
+    }
+    dropped.forEach(s -> s.cached.close());
+
+    for (PooledSession s : idle) {
+      synchronized (this) {
+        if (!sessions.contains(s)) {
+          continue;
+        }
+      }
+      try {
+        s.cached.session().sendKeepAliveMsg();
+        s.cached.probe(probes, probeTimeout);
+        s.cached.evictExpired();
+      } catch (InterruptedException e) {
+        // pool is closed, session is not to blame
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.warn("Dropping pooled session, as keepalive failed: [{}]", e.getMessage());
+        synchronized (this) {
+          sessions.remove(s);
+          notifyAll();
+        }
+        s.cached.close();
+      }
+    }
+
+    try {
+      openMissing();
+    } catch (JSchException | RuntimeException e) {
+      log.warn("Cannot open session: [{}]", e.getMessage());
+    }
+  }
+
+  /**
+   * Closes all the sessions and stops background keepalive. Pool stays usable, next borrow opens
+   * new session.
+   */
+  void close() {
+    List<PooledSession> closing;
+    synchronized (this) {
+      if (maintenance != null) {
+        maintenance.shutdownNow();
+        maintenance = null;
+      }
+      closing = new ArrayList<>(sessions);
+      sessions.clear();
+      notifyAll();
+    }
+    closing.forEach(s -> s.cached.close());
+  }
+
+  synchronized int size() {
+    return sessions.size();
+  }
+
+  synchronized int sessions(Endpoint endpoint) {
+    return (int) sessions.stream().filter(s -> endpoint.equals(s.cached.endpoint())).count();
+  }
+
+  synchronized int leased() {
+    return sessions.stream().mapToInt(s -> s.leases).sum();
+  }
+
+  void release(PooledSession session) {
+    synchronized (this) {
+      session.leases--;
+      session.idleSince = System.nanoTime();
+      notifyAll();
+    }
+  }
+
+  /**
+   * Takes a lease on the least loaded session, or reserves a place for a new one. Session to
+   * avoid is only taken when there is no other one and no new one can be opened.
+   */
+  private PooledSession borrowSession(PooledSession avoid) throws JSchException {
+    long deadline = System.nanoTime() + borrowTimeoutNanos;
+    List<PooledSession> dropped = new ArrayList<>();
+    try {
+      synchronized (this) {
+        while (true) {
+          evict(dropped);
+          PooledSession leastLoaded = null;
+          for (PooledSession s : sessions) {
+            if (s != avoid && s.leases < maxChannelsPerSession
+              && (leastLoaded == null || s.leases < leastLoaded.leases)) {
+              leastLoaded = s;
+            }
+          }
+          if (leastLoaded != null) {
+            leastLoaded.leases++;
+            return leastLoaded;
+          }
+
+          if (sessions.size() + pendingSessions < maxSessions) {
+            pendingSessions++;
+            break;
+          }
+
+          if (avoid != null && sessions.contains(avoid) && avoid.leases < maxChannelsPerSession) {
+            avoid.leases++;
+            return avoid;
+          }
+
+          long left = deadline - System.nanoTime();
+          if (left <= 0) {
+            throw new SftpClientException(new TimeoutException(
+              "No sftp channel available within " + borrowTimeoutNanos / 1_000_000 + " ms"));
+          }
+          try {
+            wait(left / 1_000_000, (int) (left % 1_000_000));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SftpClientException(e);
+          }
+        }
+      }
+    } finally {
+      dropped.forEach(s -> s.cached.close());
+    }
+
+    PooledSession session = null;
+    try {
+      session = newSession();
+      session.leases++;
+      return session;
+    } finally {
+      synchronized (this) {
+        pendingSessions--;
+        if (session != null) {
+          sessions.add(session);
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  private synchronized void startMaintenance() {
+    if (keepAliveInterval == null || maintenance != null) {
+      return;
+    }
+    ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor(1, Parallel.daemonThreads("sftp-keepalive"));
+    long interval = keepAliveInterval.toMillis();
+    executor.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    maintenance = executor;
+  }
+
+  /**
+   * Gives back lease of a session that channel could not be opened on. Session that is still
+   * connected stays in the pool, as other leases might have working channels on it.
+   */
+  private void giveBack(PooledSession session) {
+    if (session.cached.isConnected()) {
+      release(session);
+    } else {
+      metrics.reconnect();
+      invalidate(session);
+    }
+  }
+
+  private void invalidate(PooledSession session) {
+    synchronized (this) {
+      session.leases--;
+      sessions.remove(session);
+      notifyAll();
+    }
+    session.cached.close();
+  }
+
+  /**
+   * Drops sessions that are either not connected anymore or idle for too long, must be called
+   * under the lock. Dropped sessions are closed by the caller outside of the lock.
+   */
+  private void evict(List<PooledSession> dropped) {
+    long now = System.nanoTime();
+    Iterator<PooledSession> it = sessions.iterator();
+    while (it.hasNext()) {
+      PooledSession s = it.next();
+      if (s.leases > 0) {
+        continue;
+      }
+      if (validateOnBorrow && !s.cached.isConnected()) {
+        log.debug("Dropping pooled session, as it's not connected anymore");
+        it.remove();
+        dropped.add(s);
+      } else if (sessions.size() > minSessions && now - s.idleSince > idleTimeoutNanos) {
+        log.debug("Closing session idle for more than [{}] ms", idleTimeoutNanos / 1_000_000);
+        it.remove();
+        dropped.add(s);
+      }
+    }
+  }
+
+  private PooledSession newSession() throws JSchException {
+    Session session = factory.create();
+    return new PooledSession(
+      new CachedSession(session, channelIdleTimeout, maxIdleChannels, metrics, tuning,
+        channelOpened));
+  }
+
+  @FunctionalInterface
+  interface SessionFactory {
+    /**
+     * Creates new connected session.
+     */
+    Session create() throws JSchException;
+  }
+
+  static class PooledSession {
+    private final CachedSession cached;
+    private int leases;
+    private long idleSince = System.nanoTime();
+
+    private PooledSession(CachedSession cached) {
+      this.cached = cached;
+    }
+  }
+
+  /**
+   * Channel borrowed from the pool. Closing the lease gives the channel back to its session cache,
+   * unless the lease is marked broken, then the channel is closed.
+   */
+  static class ChannelLease implements AutoCloseable {
+    private final SessionPool pool;
+    private final PooledSession session;
+    private final ChannelSftp channel;
+    private boolean broken;
+    private boolean closed;
+
+    private ChannelLease(SessionPool pool, PooledSession session, ChannelSftp channel) {
+      this.pool = pool;
+      this.session = session;
+      this.channel = channel;
+    }
+
+    ChannelSftp channel() {
+      return channel;
+    }
+
+    Endpoint endpoint() {
+      return session.cached.endpoint();
+    }
+
+    void markBroken() {
+      broken = true;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (broken) {
+        session.cached.discard(channel);
+      } else {
+        session.cached.release(channel);
+      }
+      pool.release(session);
+    }
+  }
+}
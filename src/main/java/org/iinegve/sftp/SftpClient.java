@@ -2,77 +2,179 @@ package org.iinegve.sftp;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.ChannelSftp.LsEntry;
+import com.jcraft.jsch.ChannelSftp.LsEntrySelector;
 import com.jcraft.jsch.CustomJSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SocketFactory;
+import org.iinegve.sftp.SessionPool.ChannelLease;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.stream.Collectors.toList;
 
 public class SftpClient {
 
   private static final Logger log = LoggerFactory.getLogger(SftpClient.class);
 
-  private final String host;
-  private final int port;
+  private static final int LISTING_QUEUE_SIZE = 1024;
+  private static final int SIDECAR_MAX_SIZE = 4096;
+
+  private final EndpointRouter router;
   private final String username;
 
   private final CustomJSch jsch;
   private final Properties config;
-  private final ThreadLocal<Session> jschSession;
+  private final SessionPool sessionPool;
+  private final Compression compression;
+  private final SessionPool compressedPool;
+  private final int transferParallelism;
+  private final long segmentSize;
+  private final int segmentParallelism;
+  private final int walkParallelism;
+  private final int batchParallelism;
+  private final int copyBufferSize;
+  private final int channelCapacity;
+  private final RetryPolicy retryPolicy;
+  private final SftpMetrics metrics;
+  private final MetadataCache cache;
+  private final ResumableTransfer resumable;
+  private final int wireTraceSampling;
+  private final AtomicLong sessionsOpened = new AtomicLong();
+  private volatile String home;
 
-  SftpClient(String host, int port, String username, CustomJSch jsch) {
-    this.host = host;
-    this.port = port;
-    this.username = username;
+  SftpClient(SftpClientBuilder builder) {
+    this.router = new EndpointRouter(builder.endpoints(), builder.spreadSessions, this::sessions);
+    this.username = builder.username;
 
-    this.jsch = jsch;
-    this.config = new Properties();
-    config.put("StrictHostKeyChecking", "no");
-    this.jschSession = new ThreadLocal<>();
+    this.jsch = builder.jsch;
+    this.config = sessionConfig(builder, builder.compression == Compression.ON);
+    this.compression = builder.compression;
+    SocketFactory wireCounter = new CountingSocketFactory(builder.metrics::compressedWireBytes);
+    SocketFactory socketFactory = compression == Compression.ON ? wireCounter : null;
+    this.sessionPool = new SessionPool(() -> openSession(config, socketFactory), builder,
+      router::channelOpened);
+    if (compression == Compression.ADAPTIVE) {
+      Properties compressed = sessionConfig(builder, true);
+      this.compressedPool = new SessionPool(() -> openSession(compressed, wireCounter), builder,
+        router::channelOpened);
+    } else {
+      this.compressedPool = null;
+    }
+    this.transferParallelism = builder.transferParallelism;
+    this.segmentSize = builder.segmentSize;
+    this.segmentParallelism = builder.segmentParallelism;
+    this.walkParallelism = builder.walkParallelism;
+    this.batchParallelism = builder.batchParallelism;
+    this.copyBufferSize = builder.copyBufferSize;
+    this.channelCapacity = builder.maxSessions * builder.maxChannelsPerSession;
+    this.retryPolicy = builder.retryPolicy;
+    this.metrics = builder.metrics;
+    this.cache = builder.cacheTtl == null
+      ? null : new MetadataCache(builder.cacheTtl, builder.cacheMaxEntries);
+    this.resumable = new ResumableTransfer(this, builder.resumeAttempts);
+    this.wireTraceSampling = builder.wireTraceSampling;
+    metrics.poolGauges(sessionPool::size, sessionPool::leased);
   }
 
   public static SftpClientBuilder sftpClient() {
     return new SftpClientBuilder();
   }
 
+  /**
+   * Opens sessions up to configured minimum. When already connected, all the sessions are closed
+   * and opened again.
+   */
   public void connect() {
     try {
       if (isConnected()) {
         disconnect();
       }
-      Session session = jsch.getSession(username, host, port);
-      session.setConfig(config);
-      session.connect();
-      jschSession.set(session);
+      sessionPool.start();
     } catch (JSchException e) {
       throw new SftpClientException(e);
     }
   }
 
+  /**
+   * Closes all the sessions, including the ones that are in use by other threads at the moment.
+   */
   public void disconnect() {
-    if (jschSession.get() != null) {
-      jschSession.get().disconnect();
+    sessionPool.close();
+    if (compressedPool != null) {
+      compressedPool.close();
     }
-    jschSession.remove();
   }
 
   public boolean isConnected() {
-    return jschSession.get() != null && jschSession.get().isConnected();
+    return sessionPool.isConnected();
+  }
+
+  int copyBufferSize() {
+    return copyBufferSize;
+  }
+
+  RetryPolicy retryPolicy() {
+    return retryPolicy;
+  }
+
+  SftpMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Number of channels the session pool gives out at the same time.
+   */
+  int channelCapacity() {
+    return channelCapacity;
+  }
+
+  /**
+   * Counters of metadata cache, all zeros when the cache is not turned on.
+   */
+  public CacheStats cacheStats() {
+    return cache == null ? new CacheStats(0, 0, 0, 0, 0) : cache.stats();
   }
 
   /**
@@ -83,32 +185,359 @@ public class SftpClient {
    *                  directory.
    */
   public void upload(File file, String remoteDir) {
+    upload(file, remoteDir, null);
+  }
+
+  /**
+   * Uploads file to sftp computing its digest while bytes stream through, and puts the digest
+   * into sidecar file next to the uploaded one, see {@link Checksum}, so that receiving side can
+   * check what it got.
+   * <p>
+   * @param checksum digest to compute, null for none
+   * @return hex digest of uploaded bytes, null when there is no checksum
+   * @see #upload(File, String)
+   */
+  public String upload(File file, String remoteDir, Checksum checksum) {
     if (remoteDir == null || remoteDir.isEmpty()) {
       throw new IllegalArgumentException("Remote dir must not be neither null nor empty");
     }
 
-    doInSftp(channel -> {
-      String destination = remoteDir + "/" + file.getName();
-      log.info("Uploading file [{}] to [{}]", file.getAbsoluteFile(), destination);
-      channel.put(file.getAbsolutePath(), destination);
-    });
+    String destination = remoteDir + "/" + file.getName();
+    boolean compressed = compression == Compression.ON
+      || compression == Compression.ADAPTIVE && CompressionHeuristic.worthCompressing(file);
+    long started = System.nanoTime();
+    try {
+      String hex = doInSftp("upload", poolFor(compressed), retryPolicy, channel -> {
+        log.info("Uploading file [{}] to [{}]", file.getAbsoluteFile(), destination);
+        if (checksum == null) {
+          channel.put(file.getAbsolutePath(), destination);
+          metrics.bytesTransferred("upload", file.length());
+          return null;
+        }
+
+        Checksum.Hasher hasher = checksum.hasher();
+        try (InputStream in = new HashingInputStream(new FileInputStream(file), hasher)) {
+          channel.put(in, destination);
+        } catch (IOException e) {
+          throw new SftpClientException(e);
+        }
+        metrics.bytesTransferred("upload", file.length());
+        String digest = hasher.hex();
+        byte[] sidecar = (digest + "  " + file.getName() + "\n").getBytes(UTF_8);
+        channel.put(new ByteArrayInputStream(sidecar), checksum.sidecar(destination));
+        return digest;
+      });
+      reportCompression("upload", compressed, file, started);
+      return hex;
+    } finally {
+      invalidate(destination);
+      if (checksum != null) {
+        invalidate(checksum.sidecar(destination));
+      }
+    }
+  }
+
+  /**
+   * Uploads content of a stream into a remote file. Stream is read till the end, but not closed.
+   * <p>
+   * As stream cannot be read again, upload is not retried.
+   * <p>
+   * @param in             content to upload
+   * @param remoteFilePath path to a file on sftp, which is created or overwritten
+   */
+  public void upload(InputStream in, String remoteFilePath) {
+    try {
+      doInSftpOnce("upload", channel -> {
+        log.info("Uploading stream to [{}]", remoteFilePath);
+        CountingInputStream counting = new CountingInputStream(in);
+        channel.put(counting, remoteFilePath);
+        metrics.bytesTransferred("upload", counting.count);
+        return null;
+      });
+    } finally {
+      invalidate(remoteFilePath);
+    }
+  }
+
+  /**
+   * Uploads content of a byte channel into a remote file. Channel is read till the end, but not
+   * closed.
+   * <p>
+   * As channel cannot be read again, upload is not retried.
+   * <p>
+   * @param in             content to upload
+   * @param remoteFilePath path to a file on sftp, which is created or overwritten
+   */
+  public void upload(ReadableByteChannel in, String remoteFilePath) {
+    upload(Channels.newInputStream(in), remoteFilePath);
+  }
+
+  /**
+   * Uploads remaining bytes of a buffer into a remote file. Position of the given buffer is not
+   * changed, so upload is retried as any other operation.
+   * <p>
+   * @param content        content to upload
+   * @param remoteFilePath path to a file on sftp, which is created or overwritten
+   */
+  public void upload(ByteBuffer content, String remoteFilePath) {
+    try {
+      doInSftp("upload", channel -> {
+        log.info("Uploading [{}] bytes to [{}]", content.remaining(), remoteFilePath);
+        channel.put(new ByteBufferInputStream(content.duplicate()), remoteFilePath);
+        metrics.bytesTransferred("upload", content.remaining());
+      });
+    } finally {
+      invalidate(remoteFilePath);
+    }
+  }
+
+  /**
+   * Uploads file so that interrupted upload continues where it stopped instead of starting over.
+   * File is uploaded as {@code <name>.part} and renamed when complete. Upload is tried again on
+   * another channel up to {@code resumeAttempts} configured on the builder, and state is kept in
+   * {@code <file>.upload.checkpoint} next to the local file, so that upload is resumed by the next
+   * call too, for example, after restart. Upload starts over when local file has changed since.
+   * <p>
+   * @param file      file on local machine to upload
+   * @param remoteDir remote directory where to upload
+   */
+  public void uploadResumable(File file, String remoteDir) {
+    resumable.upload(file, remoteDir);
+  }
+
+  /**
+   * Uploads files in parallel, spreading them over pooled channels and sessions. Number of
+   * transfers at the same time is {@code transferParallelism} configured on the builder.
+   * <p>
+   * @param files     files on local machine to upload
+   * @param remoteDir remote directory where to upload. Must not be null or empty, use . for current
+   *                  directory.
+   * @return per-file results and aggregate throughput, failed file doesn't stop the batch
+   */
+  public TransferReport uploadAll(Collection<File> files, String remoteDir) {
+    return uploadAll(files, remoteDir, transferParallelism);
+  }
+
+  /**
+   * Uploads files in parallel with given number of transfers at the same time.
+   * <p>
+   * @see #uploadAll(Collection, String)
+   */
+  public TransferReport uploadAll(Collection<File> files, String remoteDir, int parallelism) {
+    if (remoteDir == null || remoteDir.isEmpty()) {
+      throw new IllegalArgumentException("Remote dir must not be neither null nor empty");
+    }
+
+    long started = System.nanoTime();
+    List<TransferResult> results = Parallel.map(files, parallelism, file ->
+      TransferResult.measure(file.getAbsolutePath(), remoteDir + "/" + file.getName(),
+        () -> {
+          upload(file, remoteDir);
+          return file.length();
+        }));
+    TransferReport report =
+      new TransferReport(results, Duration.ofNanos(System.nanoTime() - started));
+    log.info("Uploaded [{}] files to [{}]: {}", files.size(), remoteDir, report);
+    return report;
   }
 
   public List<String> listDirectory(String remoteDir) {
+    if (cache != null) {
+      return listFiles(remoteDir).stream().map(RemoteFile::name).collect(toList());
+    }
+    return listDirectory(remoteDir, fn -> true, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Lists directory keeping only file names accepted by the filter. Listing stops as soon as
+   * {@code limit} names are found, without reading the rest of the directory from the server.
+   * <p>
+   * @param remoteDir remote directory to list. Must not be null or empty, use . for current
+   *                  directory.
+   * @param filter    applied to every name as it comes from the server, see {@link Filters}
+   * @param limit     maximum number of names to return
+   */
+  public List<String> listDirectory(String remoteDir, Predicate<String> filter, int limit) {
+    List<RemoteFile> cached = cachedListing(remoteDir);
+    if (cached != null) {
+      return cached.stream().map(RemoteFile::name).filter(filter).limit(limit).collect(toList());
+    }
+    return list(remoteDir, (dir, entry) -> entry.getFilename(), filter, limit);
+  }
+
+  /**
+   * Lists directory lazily: names are handed over as they come from the server, without waiting
+   * for the whole directory, and reading stops when the stream is closed, for example, after
+   * {@code limit()}. Stream must be closed, preferably with try-with-resources, as listing holds a
+   * pooled channel and a thread until then.
+   * <p>
+   * As some names might already be consumed, failed listing is not retried, the exception is
+   * thrown from the stream.
+   * <p>
+   * @param remoteDir remote directory to list. Must not be null or empty, use . for current
+   *                  directory.
+   * @param filter    applied to every name as it comes from the server, see {@link Filters}
+   */
+  public Stream<String> streamDirectory(String remoteDir, Predicate<String> filter) {
+    return stream(remoteDir, (dir, entry) -> entry.getFilename(), filter);
+  }
+
+  /**
+   * Lists directory together with attributes of every file: size, modification time, permissions
+   * and type, as server sends them along with the names.
+   * <p>
+   * @param remoteDir remote directory to list. Must not be null or empty, use . for current
+   *                  directory.
+   */
+  public List<RemoteFile> listFiles(String remoteDir) {
+    if (cache == null) {
+      return listFiles(remoteDir, file -> true, Integer.MAX_VALUE);
+    }
     if (remoteDir == null || remoteDir.isEmpty()) {
       throw new IllegalArgumentException("Remote dir must not be neither null nor empty");
     }
 
-    return doInSftp(channel -> {
+    List<RemoteFile> listing = cache.listing(absolute(remoteDir), () -> Collections
+      .unmodifiableList(list(remoteDir, RemoteFile::of, file -> true, Integer.MAX_VALUE)));
+    return listing.stream().map(file -> file.inDirectory(remoteDir)).collect(toList());
+  }
+
+  /**
+   * Lists directory with attributes keeping only files accepted by the filter, and stops as soon
+   * as {@code limit} files are found.
+   * <p>
+   * @param filter applied to every file as it comes from the server, see {@link Filters}
+   * @see #listFiles(String)
+   * @see #listDirectory(String, Predicate, int)
+   */
+  public List<RemoteFile> listFiles(String remoteDir, Predicate<RemoteFile> filter, int limit) {
+    List<RemoteFile> cached = cachedListing(remoteDir);
+    if (cached != null) {
+      return cached.stream().filter(filter).limit(limit).collect(toList());
+    }
+    return list(remoteDir, RemoteFile::of, filter, limit);
+  }
+
+  /**
+   * Gives listing from metadata cache, when it's there, otherwise null. Filtered listings don't
+   * load anything into the cache, as they might stop before reading whole directory.
+   */
+  private List<RemoteFile> cachedListing(String remoteDir) {
+    if (cache == null || remoteDir == null || remoteDir.isEmpty()) {
+      return null;
+    }
+    List<RemoteFile> listing = cache.listingIfPresent(absolute(remoteDir));
+    return listing == null
+      ? null : listing.stream().map(file -> file.inDirectory(remoteDir)).collect(toList());
+  }
+
+  /**
+   * Lists directory with attributes lazily. Stream must be closed.
+   * <p>
+   * @param filter applied to every file as it comes from the server, see {@link Filters}
+   * @see #listFiles(String)
+   * @see #streamDirectory(String, Predicate)
+   */
+  public Stream<RemoteFile> streamFiles(String remoteDir, Predicate<RemoteFile> filter) {
+    return stream(remoteDir, RemoteFile::of, filter);
+  }
+
+  /**
+   * Walks directory tree recursively, listing up to {@code walkParallelism} directories at the
+   * same time over pooled channels. Entries are handed over as soon as their directory is listed,
+   * in no particular order. Links are not followed.
+   * <p>
+   * Stream must be closed, preferably with try-with-resources, as the walk holds threads until
+   * then. Closing the stream stops the walk.
+   * <p>
+   * Subdirectory that cannot be listed, for example because permission is denied, is logged and
+   * skipped together with everything underneath it. When root cannot be listed or connection
+   * fails, the stream throws {@link SftpClientException}.
+   * <p>
+   * @param remoteRoot directory to start from
+   * @param maxDepth   how deep to go, 1 is entries of the root only
+   * @param filter     which entries to give out, doesn't affect descending into directories
+   */
+  public Stream<RemoteFile> walk(String remoteRoot, int maxDepth, Predicate<RemoteFile> filter) {
+    return walk(remoteRoot, maxDepth, filter, dir -> false);
+  }
+
+  /**
+   * Walks directory tree recursively skipping subtrees of directories matching prune predicate.
+   * <p>
+   * @param prune directories not to descend into, they are still given out when match filter
+   * @see #walk(String, int, Predicate)
+   */
+  public Stream<RemoteFile> walk(String remoteRoot, int maxDepth, Predicate<RemoteFile> filter,
+                                 Predicate<RemoteFile> prune) {
+    return walk(remoteRoot, maxDepth, filter, prune, dir -> { });
+  }
+
+  /**
+   * Walks directory tree recursively telling about subdirectories that are skipped, as they
+   * cannot be listed, so that caller knows the walk didn't see everything.
+   * <p>
+   * @param unreadable called with path of every skipped subdirectory, from walk threads
+   * @see #walk(String, int, Predicate, Predicate)
+   */
+  public Stream<RemoteFile> walk(String remoteRoot, int maxDepth, Predicate<RemoteFile> filter,
+                                 Predicate<RemoteFile> prune, Consumer<String> unreadable) {
+    if (remoteRoot == null || remoteRoot.isEmpty()) {
+      throw new IllegalArgumentException("Remote root must not be neither null nor empty");
+    }
+    if (maxDepth < 1) {
+      throw new IllegalArgumentException("Max depth must be positive");
+    }
+
+    TreeWalk walk = new TreeWalk(this::listFiles, maxDepth, filter, prune, unreadable);
+    log.debug("Walking [{}] up to depth [{}]", remoteRoot, maxDepth);
+    return PushStream.of("sftp-walk-results", LISTING_QUEUE_SIZE,
+      sink -> walk.run(remoteRoot, walkParallelism, sink));
+  }
+
+  private <T> List<T> list(String remoteDir, EntryMapper<T> mapper, Predicate<T> filter,
+                           int limit) {
+    if (remoteDir == null || remoteDir.isEmpty()) {
+      throw new IllegalArgumentException("Remote dir must not be neither null nor empty");
+    }
+
+    return doInSftp("list", channel -> {
       log.debug("Listing directory [{}]", remoteDir);
-      List<LsEntry> ls = new ArrayList<>(channel.ls(remoteDir));
-      List<String> filenames = ls.stream()
-        .map(LsEntry::getFilename)
-        .filter(fn -> !fn.equals("."))
-        .filter(fn -> !fn.equals(".."))
-        .collect(toList());
-      log.debug("Found: [{}]", filenames);
-      return filenames;
+      List<T> found = new ArrayList<>();
+      channel.ls(remoteDir, entry -> {
+        if (!isDotEntry(entry.getFilename())) {
+          T item = mapper.map(remoteDir, entry);
+          if (filter.test(item)) {
+            found.add(item);
+          }
+        }
+        return found.size() < limit ? LsEntrySelector.CONTINUE : LsEntrySelector.BREAK;
+      });
+      log.debug("Found: [{}]", found);
+      return found;
+    });
+  }
+
+  private <T> Stream<T> stream(String remoteDir, EntryMapper<T> mapper, Predicate<T> filter) {
+    if (remoteDir == null || remoteDir.isEmpty()) {
+      throw new IllegalArgumentException("Remote dir must not be neither null nor empty");
+    }
+
+    return PushStream.of("sftp-listing", LISTING_QUEUE_SIZE, sink -> {
+      doInSftpOnce("list", channel -> {
+        log.debug("Streaming directory [{}]", remoteDir);
+        channel.ls(remoteDir, entry -> {
+          if (isDotEntry(entry.getFilename())) {
+            return LsEntrySelector.CONTINUE;
+          }
+          T item = mapper.map(remoteDir, entry);
+          if (!filter.test(item)) {
+            return LsEntrySelector.CONTINUE;
+          }
+          return sink.accept(item) ? LsEntrySelector.CONTINUE : LsEntrySelector.BREAK;
+        });
+        return null;
+      });
     });
   }
 
@@ -120,26 +549,227 @@ public class SftpClient {
    *                         downloaded file into
    */
   public File download(String remoteFilePath, File localDestination) {
-    return doInSftp(channel -> {
-      int remoteFileNameIndex = remoteFilePath.lastIndexOf('/');
-      String remoteFileName = remoteFileNameIndex == -1
-        ? remoteFilePath : remoteFilePath.substring(remoteFileNameIndex + 1);
+    return download(remoteFilePath, localDestination, null);
+  }
 
-      String localFileName = localDestination.isDirectory()
-        ? localDestination + File.separator + remoteFileName
-        : localDestination.getAbsolutePath();
-      log.debug("Downloading remote file [{}] into local [{}]", remoteFileName, localFileName);
+  /**
+   * Downloads file computing its digest while bytes stream through, and checks it against the
+   * sidecar file next to the remote one, see {@link Checksum}. When digests differ, the local
+   * file is deleted and download fails with {@link ChecksumMismatchException} as a cause, after
+   * it's tried again according to retry policy. Missing sidecar fails download right away.
+   * <p>
+   * @param checksum digest to check, null for none
+   * @see #download(String, File)
+   */
+  public File download(String remoteFilePath, File localDestination, Checksum checksum) {
+    File localFile = localFile(remoteFilePath, localDestination);
+    String remoteName = remoteFilePath.substring(remoteFilePath.lastIndexOf('/') + 1);
+    boolean compressed = compression == Compression.ON || compression == Compression.ADAPTIVE
+      && CompressionHeuristic.byName(remoteName).orElse(false);
+    long started = System.nanoTime();
+    File downloaded = doInSftp("download", poolFor(compressed), retryPolicy, channel -> {
+      log.debug("Downloading remote file [{}] into local [{}]", remoteFilePath, localFile);
+      String expected = checksum == null
+        ? null : readSidecar(channel, checksum.sidecar(remoteFilePath));
+      Checksum.Hasher hasher = checksum == null ? null : checksum.hasher();
 
       try (InputStream in = channel.get(remoteFilePath);
-           OutputStream out = new FileOutputStream(new File(localFileName))
+           OutputStream out = new FileOutputStream(localFile)
       ) {
-        in.transferTo(out);
+        metrics.bytesTransferred("download", copy(in, out, hasher));
       } catch (IOException e) {
         log.error("Cannot download file", e);
         throw new SftpClientException(e);
       }
-      return new File(localFileName);
+
+      if (hasher != null) {
+        String actual = hasher.hex();
+        if (!actual.equals(expected)) {
+          log.warn("Checksum of [{}] is [{}], but expected [{}]", remoteFilePath, actual, expected);
+          localFile.delete();
+          throw new SftpClientException(
+            new ChecksumMismatchException(remoteFilePath, expected, actual));
+        }
+      }
+      return localFile;
     });
+    reportCompression("download", compressed, downloaded, started);
+    return downloaded;
+  }
+
+  /**
+   * Downloads file so that interrupted download continues where it stopped instead of starting
+   * over. File is downloaded as {@code <name>.part} and renamed when complete. Download is tried
+   * again on another channel up to {@code resumeAttempts} configured on the builder, and progress
+   * is recorded in {@code <name>.part.checkpoint}, so that download is resumed by the next call
+   * too, for example, after restart. Download starts over when remote file has changed since.
+   * <p>
+   * @param remoteFilePath   path to a file on sftp
+   * @param localDestination path to either a directory to put downloaded file or a file to put
+   *                         downloaded file into
+   */
+  public File downloadResumable(String remoteFilePath, File localDestination) {
+    return resumable.download(remoteFilePath, localFile(remoteFilePath, localDestination));
+  }
+
+  /**
+   * Downloads remote file into a stream. Stream is not closed.
+   * <p>
+   * As bytes might already be written into the stream, download is not retried.
+   * <p>
+   * @param remoteFilePath path to a file on sftp
+   * @param out            stream to write content of the remote file into
+   * @return number of bytes written
+   */
+  public long download(String remoteFilePath, OutputStream out) {
+    return doInSftpOnce("download", channel -> {
+      log.debug("Downloading remote file [{}] into stream", remoteFilePath);
+      try (InputStream in = channel.get(remoteFilePath)) {
+        long bytes = copy(in, out);
+        metrics.bytesTransferred("download", bytes);
+        return bytes;
+      } catch (IOException e) {
+        log.error("Cannot download file", e);
+        throw new SftpClientException(e);
+      }
+    });
+  }
+
+  /**
+   * Downloads remote file into a byte channel. Channel is not closed.
+   * <p>
+   * @see #download(String, OutputStream)
+   */
+  public long download(String remoteFilePath, WritableByteChannel out) {
+    return download(remoteFilePath, Channels.newOutputStream(out));
+  }
+
+  /**
+   * Opens remote file for reading. Returned stream holds a pooled channel until it's closed, so it
+   * must always be closed, preferably with try-with-resources.
+   * <p>
+   * @param remoteFilePath path to a file on sftp
+   * @return stream of remote file content
+   */
+  public InputStream openRead(String remoteFilePath) {
+    ChannelLease lease;
+    try {
+      lease = sessionPool.borrow();
+    } catch (JSchException e) {
+      throw new SftpClientException(e);
+    }
+
+    try {
+      log.debug("Opening remote file [{}] for reading", remoteFilePath);
+      return new LeasedInputStream(lease.channel().get(remoteFilePath), lease);
+    } catch (SftpException | RuntimeException e) {
+      lease.close();
+      throw new SftpClientException(e);
+    }
+  }
+
+  /**
+   * Downloads large file in segments: file is split into byte ranges of {@code segmentSize} and
+   * each range is fetched on its own channel straight into its position in the local file. It
+   * helps on high latency links, where a single channel's window limits throughput. Segment size
+   * and number of segments at the same time are configured on the builder.
+   * <p>
+   * Failed segment is retried on its own, without downloading the whole file again. Segments are
+   * written into {@code <name>.part}, that is renamed only when all of them are downloaded, and
+   * deleted when any of them fails, so that an incomplete file never looks like a downloaded one.
+   * <p>
+   * @param remoteFilePath   path to a file on sftp
+   * @param localDestination path to either a directory to put downloaded file or a file to put
+   *                         downloaded file into
+   */
+  public File downloadSegmented(String remoteFilePath, File localDestination) {
+    return downloadSegmented(remoteFilePath, localDestination, segmentSize, segmentParallelism);
+  }
+
+  /**
+   * Downloads large file in segments of given size, fetching up to {@code parallelism} segments
+   * at the same time.
+   * <p>
+   * @see #downloadSegmented(String, File)
+   */
+  public File downloadSegmented(String remoteFilePath, File localDestination, long segmentSize,
+                                int parallelism) {
+    if (segmentSize < 1) {
+      throw new IllegalArgumentException("Segment size must be positive");
+    }
+
+    long size = doInSftp("stat", channel -> {
+      return channel.stat(remoteFilePath).getSize();
+    });
+    if (size <= segmentSize) {
+      return download(remoteFilePath, localDestination);
+    }
+
+    File localFile = localFile(remoteFilePath, localDestination);
+    List<long[]> segments = new ArrayList<>();
+    for (long offset = 0; offset < size; offset += segmentSize) {
+      segments.add(new long[]{offset, Math.min(segmentSize, size - offset)});
+    }
+    log.debug("Downloading remote file [{}] of [{}] bytes into local [{}] in [{}] segments",
+      remoteFilePath, size, localFile, segments.size());
+
+    File part = new File(localFile.getPath() + ".part");
+    boolean downloaded = false;
+    try {
+      try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+        file.setLength(size);
+        FileChannel out = file.getChannel();
+        Parallel.map(segments, parallelism, segment -> doInSftp("download", channel -> {
+          downloadSegment(channel, remoteFilePath, out, segment[0], segment[1]);
+          metrics.bytesTransferred("download", segment[1]);
+          return null;
+        }));
+      }
+      Files.move(part.toPath(), localFile.toPath(), REPLACE_EXISTING);
+      downloaded = true;
+    } catch (IOException e) {
+      log.error("Cannot download file", e);
+      throw new SftpClientException(e);
+    } finally {
+      if (!downloaded) {
+        part.delete();
+      }
+    }
+    return localFile;
+  }
+
+  /**
+   * Downloads files in parallel into a given local directory, spreading them over pooled channels
+   * and sessions. Number of transfers at the same time is {@code transferParallelism} configured on
+   * the builder.
+   * <p>
+   * @param remoteFilePaths paths to files on sftp
+   * @param localDir        local directory to put downloaded files into
+   * @return per-file results and aggregate throughput, failed file doesn't stop the batch
+   */
+  public TransferReport downloadAll(Collection<String> remoteFilePaths, File localDir) {
+    return downloadAll(remoteFilePaths, localDir, transferParallelism);
+  }
+
+  /**
+   * Downloads files in parallel with given number of transfers at the same time.
+   * <p>
+   * @see #downloadAll(Collection, File)
+   */
+  public TransferReport downloadAll(Collection<String> remoteFilePaths, File localDir,
+                                    int parallelism) {
+    if (!localDir.isDirectory()) {
+      throw new IllegalArgumentException("Local destination must be a directory: " + localDir);
+    }
+
+    long started = System.nanoTime();
+    List<TransferResult> results = Parallel.map(remoteFilePaths, parallelism, remotePath ->
+      TransferResult.measure(remotePath, localDir.getAbsolutePath(),
+        () -> download(remotePath, localDir).length()));
+    TransferReport report =
+      new TransferReport(results, Duration.ofNanos(System.nanoTime() - started));
+    log.info("Downloaded [{}] files into [{}]: {}", remoteFilePaths.size(), localDir, report);
+    return report;
   }
 
   /**
@@ -149,10 +779,102 @@ public class SftpClient {
    * @param remoteFileTo   path to a file where to move it
    */
   public void move(String remoteFileFrom, String remoteFileTo) {
-    doInSftp(channel -> {
-      log.debug("Move [{}] to [{}]", remoteFileFrom, remoteFileTo);
-      channel.rename(remoteFileFrom, remoteFileTo);
+    try {
+      doInSftp("move", channel -> {
+        log.debug("Move [{}] to [{}]", remoteFileFrom, remoteFileTo);
+        channel.rename(remoteFileFrom, remoteFileTo);
+      });
+    } finally {
+      invalidate(remoteFileFrom, remoteFileTo);
+    }
+  }
+
+  /**
+   * Moves files in bulk, spreading them over {@code batchParallelism} pooled channels configured
+   * on the builder. Missing target directories are created beforehand, each of them once, and
+   * files that have no target directory are reported as failed without trying to move them.
+   * <p>
+   * @param remoteFiles map of path of file to move to path where to move it
+   * @return result per file, in iteration order of the map, path of result is the file's path
+   *         before moving
+   */
+  public BatchReport moveAll(Map<String, String> remoteFiles) {
+    return moveAll(remoteFiles, batchParallelism);
+  }
+
+  /**
+   * Same as {@link #moveAll(Map)}, but with a given number of channels.
+   */
+  public BatchReport moveAll(Map<String, String> remoteFiles, int parallelism) {
+    long started = System.nanoTime();
+    List<Map.Entry<String, String>> moves = new ArrayList<>(remoteFiles.entrySet());
+    log.debug("Moving [{}] files", moves.size());
+
+    Set<String> dirs = new TreeSet<>();
+    moves.forEach(move -> dirs.add(RemoteFile.parent(move.getValue())));
+    dirs.removeAll(Arrays.asList(".", "/"));
+    Map<String, Exception> missingDirs = new ConcurrentHashMap<>();
+    Parallel.map(dirs, parallelism, dir -> {
+      try {
+        createDirectories(dir);
+      } catch (SftpClientException e) {
+        log.warn("Cannot create directory [{}]: [{}]", dir, e.getMessage());
+        missingDirs.put(dir, e);
+      }
+      return dir;
     });
+
+    try {
+      List<Map.Entry<String, String>> ready = moves.stream()
+        .filter(move -> !missingDirs.containsKey(RemoteFile.parent(move.getValue())))
+        .collect(toList());
+      Iterator<PathResult> moved = new RemoteBatch<Map.Entry<String, String>>(this, "move",
+        Map.Entry::getKey, (channel, move) -> channel.rename(move.getKey(), move.getValue()))
+        .run(ready, parallelism).results().iterator();
+
+      List<PathResult> results = new ArrayList<>(moves.size());
+      for (Map.Entry<String, String> move : moves) {
+        Exception dirError = missingDirs.get(RemoteFile.parent(move.getValue()));
+        results.add(dirError == null
+          ? moved.next() : new PathResult(move.getKey(), PathResult.Outcome.FAILED, dirError));
+      }
+      return new BatchReport(results, Duration.ofNanos(System.nanoTime() - started));
+    } finally {
+      moves.forEach(move -> invalidate(move.getKey(), move.getValue()));
+    }
+  }
+
+  /**
+   * Moves all the files of a directory into another directory, which is created when missing.
+   * Subdirectories are not moved.
+   * <p>
+   * @see #moveAll(Map)
+   */
+  public BatchReport moveDirectoryContents(String remoteDir, String targetDir) {
+    return moveDirectoryContents(remoteDir, targetDir, file -> true);
+  }
+
+  /**
+   * Moves files of a directory that match filter into another directory, which is created when
+   * missing. Subdirectories are not moved.
+   * <p>
+   * @param remoteDir directory to move files from
+   * @param targetDir directory to move files into
+   * @param filter    which files to move, for example, {@code Filters.name(Filters.glob("*.csv"))}
+   * @see #moveAll(Map)
+   */
+  public BatchReport moveDirectoryContents(String remoteDir, String targetDir,
+                                           Predicate<RemoteFile> filter) {
+    Map<String, String> moves = new LinkedHashMap<>();
+    for (RemoteFile file : listFiles(remoteDir)) {
+      if (file.isRegularFile() && filter.test(file)) {
+        moves.put(file.path(), RemoteFile.join(targetDir, file.name()));
+      }
+    }
+    if (moves.isEmpty()) {
+      createDirectories(targetDir);
+    }
+    return moveAll(moves);
   }
 
   /**
@@ -163,9 +885,107 @@ public class SftpClient {
    * @param remoteFile relative path to designate file to be deleted
    */
   public void delete(String remoteFile) {
-    doInSftp(channel -> {
-      log.debug("Delete [{}]", remoteFile);
-      channel.rm(remoteFile);
+    try {
+      doInSftp("delete", channel -> {
+        log.debug("Delete [{}]", remoteFile);
+        channel.rm(remoteFile);
+      });
+    } finally {
+      invalidate(remoteFile);
+    }
+  }
+
+  /**
+   * Attributes of remote file or directory, following symbolic links. Missing path is not an
+   * error, so it's not retried.
+   * <p>
+   * @param remotePath path on sftp
+   * @return attributes, empty when there is no such path
+   */
+  public Optional<RemoteFile> stat(String remotePath) {
+    if (remotePath == null || remotePath.isEmpty()) {
+      throw new IllegalArgumentException("Remote path must not be neither null nor empty");
+    }
+    if (cache == null) {
+      return statUncached(remotePath);
+    }
+    Optional<RemoteFile> file = cache.stat(absolute(remotePath), () -> statUncached(remotePath));
+    return file.map(f -> f.withPath(remotePath));
+  }
+
+  public boolean exists(String remotePath) {
+    return stat(remotePath).isPresent();
+  }
+
+  /**
+   * Attributes of many paths at once, spread over {@code batchParallelism} pooled channels
+   * configured on the builder.
+   * <p>
+   * @see #statAll(Collection, int)
+   */
+  public Map<String, Optional<RemoteFile>> statAll(Collection<String> remotePaths) {
+    return statAll(remotePaths, batchParallelism);
+  }
+
+  /**
+   * Attributes of many paths at once. Every stat waits for its reply, so they are spread over
+   * {@code parallelism} pooled channels to have that many requests in flight. Paths that are in
+   * metadata cache are not asked again.
+   * <p>
+   * @param remotePaths paths on sftp
+   * @param parallelism how many channels to use at the same time
+   * @return attributes of each path in the order paths are given, empty for missing path
+   * @throws SftpClientException when any of the paths cannot be checked, for example, permission
+   *                             is denied
+   */
+  public Map<String, Optional<RemoteFile>> statAll(Collection<String> remotePaths,
+                                                   int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+    Set<String> paths = new LinkedHashSet<>(remotePaths);
+    Map<String, Optional<RemoteFile>> found = new ConcurrentHashMap<>();
+    List<String> asked = new ArrayList<>();
+    for (String path : paths) {
+      Optional<RemoteFile> cached = cache == null ? null : cache.statIfPresent(absolute(path));
+      if (cached != null) {
+        found.put(path, cached.map(f -> f.withPath(path)));
+      } else {
+        asked.add(path);
+      }
+    }
+
+    BatchReport report = new RemoteBatch<String>(this, "stat", path -> path,
+      (channel, path) -> found.put(path, Optional.of(RemoteFile.at(path, channel.stat(path)))))
+      .run(asked, parallelism);
+    for (PathResult result : report.results()) {
+      if (result.outcome() == PathResult.Outcome.FAILED) {
+        throw new SftpClientException(result.error().orElse(null));
+      }
+      if (result.outcome() == PathResult.Outcome.MISSING) {
+        found.put(result.path(), Optional.empty());
+      }
+      if (cache != null) {
+        Optional<RemoteFile> file = found.get(result.path());
+        cache.stat(absolute(result.path()), () -> file);
+      }
+    }
+
+    Map<String, Optional<RemoteFile>> stats = new LinkedHashMap<>();
+    paths.forEach(path -> stats.put(path, found.get(path)));
+    return stats;
+  }
+
+  private Optional<RemoteFile> statUncached(String remotePath) {
+    return doInSftp("stat", channel -> {
+      try {
+        return Optional.of(RemoteFile.at(remotePath, channel.stat(remotePath)));
+      } catch (SftpException e) {
+        if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+          return Optional.empty();
+        }
+        throw e;
+      }
     });
   }
 
@@ -175,72 +995,391 @@ public class SftpClient {
    * Note: doesn't delete directories.
    *
    * @param remoteFiles collection of relative paths that have to be deleted
+   * @throws SftpClientException when any of the files is not deleted, the rest of them are
+   *                             deleted anyway
    */
   public void delete(List<String> remoteFiles) {
-    Set<String> toBeDeletedFiles = new HashSet<>(remoteFiles);
-    doInSftp(channel -> {
-      log.debug("Deleting [{}] files", toBeDeletedFiles.size());
-      Iterator<String> it = toBeDeletedFiles.iterator();
-      while (it.hasNext()) {
-        channel.rm(it.next());
-        it.remove();
+    BatchReport report = deleteAll(new LinkedHashSet<>(remoteFiles));
+    report.results().stream()
+      .filter(result -> !result.isDone())
+      .findFirst()
+      .ifPresent(result -> {
+        throw new SftpClientException(result.error().orElse(null));
+      });
+  }
+
+  /**
+   * Deletes files in bulk, spreading them over {@code batchParallelism} pooled channels configured
+   * on the builder. Unlike {@link #delete(List)} it doesn't throw, but gives result of each file.
+   * <p>
+   * Note: doesn't delete directories.
+   *
+   * @param remoteFiles paths of files to delete
+   * @return result per file, files that don't exist are reported as missing
+   */
+  public BatchReport deleteAll(Collection<String> remoteFiles) {
+    return deleteAll(remoteFiles, batchParallelism);
+  }
+
+  /**
+   * Same as {@link #deleteAll(Collection)}, but with a given number of channels.
+   */
+  public BatchReport deleteAll(Collection<String> remoteFiles, int parallelism) {
+    List<String> paths = new ArrayList<>(remoteFiles);
+    log.debug("Deleting [{}] files", paths.size());
+    try {
+      return new RemoteBatch<String>(this, "delete", path -> path, ChannelSftp::rm)
+        .run(paths, parallelism);
+    } finally {
+      invalidate(paths.toArray(new String[0]));
+    }
+  }
+
+  /**
+   * Creates remote directory together with all missing parent directories. Does nothing when
+   * the directory already exists.
+   * <p>
+   * @param remoteDir path of directory to create
+   */
+  public void createDirectories(String remoteDir) {
+    List<String> created = new ArrayList<>();
+    try {
+      doInSftp("mkdir", channel -> {
+        created.clear();
+        mkdirs(channel, remoteDir, created);
+      });
+    } finally {
+      invalidate(created.toArray(new String[0]));
+    }
+  }
+
+  /**
+   * Sets modification time of a remote file, with seconds precision as sftp keeps it.
+   */
+  void setModificationTime(String remoteFilePath, Instant modifiedAt) {
+    try {
+      doInSftp("setMtime", channel -> {
+        channel.setMtime(remoteFilePath, (int) modifiedAt.getEpochSecond());
+      });
+    } finally {
+      invalidate(remoteFilePath);
+    }
+  }
+
+  private static void mkdirs(ChannelSftp channel, String remoteDir, List<String> created)
+    throws SftpException {
+    if (isDirectory(channel, remoteDir)) {
+      return;
+    }
+
+    StringBuilder path = new StringBuilder(remoteDir.startsWith("/") ? "/" : "");
+    for (String segment : remoteDir.split("/")) {
+      if (segment.isEmpty() || segment.equals(".")) {
+        continue;
       }
-      log.debug("Files successfully deleted");
-    });
+      path.append(segment);
+      String current = path.toString();
+      if (!isDirectory(channel, current)) {
+        try {
+          log.debug("Creating directory [{}]", current);
+          channel.mkdir(current);
+          created.add(current);
+        } catch (SftpException e) {
+          // might be created by someone else in between
+          if (!isDirectory(channel, current)) {
+            throw e;
+          }
+        }
+      }
+      path.append('/');
+    }
+  }
+
+  /**
+   * Tells whether path is an existing directory, throws when it exists, but is not a directory.
+   */
+  private static boolean isDirectory(ChannelSftp channel, String remotePath)
+    throws SftpException {
+    SftpATTRS attrs;
+    try {
+      attrs = channel.stat(remotePath);
+    } catch (SftpException e) {
+      if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+        return false;
+      }
+      throw e;
+    }
+    if (!attrs.isDir()) {
+      throw new SftpException(ChannelSftp.SSH_FX_FAILURE, remotePath + " is not a directory");
+    }
+    return true;
+  }
+
+  private void downloadSegment(ChannelSftp channel, String remoteFilePath, FileChannel out,
+                               long offset, long length) throws SftpException {
+    byte[] buffer = new byte[copyBufferSize];
+    try (InputStream in = channel.get(remoteFilePath, null, offset)) {
+      long position = offset;
+      long left = length;
+      while (left > 0) {
+        int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+        if (read < 0) {
+          throw new IOException("Remote file is shorter than expected, ended at " + position);
+        }
+        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+        while (chunk.hasRemaining()) {
+          position += out.write(chunk, position);
+        }
+        left -= read;
+      }
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  private long copy(InputStream in, OutputStream out) throws IOException {
+    return copy(in, out, null);
+  }
+
+  private long copy(InputStream in, OutputStream out, Checksum.Hasher hasher) throws IOException {
+    byte[] buffer = new byte[copyBufferSize];
+    long copied = 0;
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+      if (hasher != null) {
+        hasher.update(buffer, 0, read);
+      }
+      copied += read;
+    }
+    return copied;
+  }
+
+  /**
+   * Reads hex digest out of sidecar file, that is the first word of it.
+   */
+  private static String readSidecar(ChannelSftp channel, String sidecar) throws SftpException {
+    try (InputStream in = channel.get(sidecar)) {
+      String content = new String(in.readNBytes(SIDECAR_MAX_SIZE), UTF_8).trim();
+      return content.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  /**
+   * Drops changed paths from metadata cache, when it's turned on.
+   */
+  void invalidate(String... remotePaths) {
+    if (cache == null) {
+      return;
+    }
+    for (String remotePath : remotePaths) {
+      cache.invalidate(absolute(remotePath));
+    }
+  }
+
+  /**
+   * Makes absolute path out of the one relative to home directory, so that the same remote file
+   * has the same key in metadata cache regardless of how it's spelled.
+   */
+  private String absolute(String remotePath) {
+    if (home == null) {
+      home = doInSftp("pwd", channel -> {
+        return channel.pwd();
+      });
+    }
+    return MetadataCache.normalize(home, remotePath);
+  }
+
+  private static boolean isDotEntry(String filename) {
+    return filename.equals(".") || filename.equals("..");
+  }
+
+  private static File localFile(String remoteFilePath, File localDestination) {
+    int remoteFileNameIndex = remoteFilePath.lastIndexOf('/');
+    String remoteFileName = remoteFileNameIndex == -1
+      ? remoteFilePath : remoteFilePath.substring(remoteFileNameIndex + 1);
+
+    return localDestination.isDirectory()
+      ? new File(localDestination, remoteFileName)
+      : localDestination.getAbsoluteFile();
   }
 
   /**
    * Method that wraps simple operation to keep all the low level burden with opening and closing
    * the channel in here leaving actual operation to where it belongs.
    * <p>
+   * Channel is borrowed from the session pool and given back after operation, so that consecutive
+   * operations don't pay for channel opening. Failed operation is tried again according to retry
+   * policy, on another channel when the failure is about connection, and such a channel is closed.
+   * Failure to get a channel, like server being down for a moment, is retried the same way.
+   * <p>
    * @param op  operation to do in sftp
    * @param <T> type of value that's going to be returned as a result of operation
    * @return result of operation, for example list of file names
    */
-  private <T> T doInSftp(ReturningFileOp<T> op) {
-    ChannelSftp channel = null;
-    if (!isConnected()) {
-      connect();
-    }
+  <T> T doInSftp(String operation, ReturningFileOp<T> op) {
+    return doInSftp(operation, sessionPool, retryPolicy, op);
+  }
 
+  /**
+   * Same as {@link #doInSftp(String, ReturningFileOp)}, but without retry. It's for operations that
+   * cannot be repeated, for example, the ones that consume caller's stream.
+   */
+  <T> T doInSftpOnce(String operation, ReturningFileOp<T> op) {
+    return doInSftp(operation, sessionPool, RetryPolicy.none(), op);
+  }
+
+  private <T> T doInSftp(String operation, SessionPool pool, RetryPolicy policy,
+                         ReturningFileOp<T> op) {
+    long started = System.nanoTime();
+    ChannelLease lease = null;
+    boolean healthy = false;
+    boolean succeeded = false;
     try {
-      channel = reconnectChannelOnException();
-      int retries = 2;
-      SftpClientException retryEx = null;
-      while (retries > 0) {
+      for (int attempt = 1; ; attempt++) {
         try {
-          return op.process(channel);
+          if (lease == null) {
+            lease = pool.borrow();
+          }
+          T result = op.process(lease.channel());
+          healthy = true;
+          succeeded = true;
+          router.operation(lease.endpoint(), true);
+          return result;
         } catch (Exception ex) {
-          retries--;
-          log.error("Caught exception [{}], retrying", ex.getMessage());
-          retryEx = new SftpClientException(ex);
+          // without lease it's reconnect that failed, that is retried the same way
+          if (lease != null) {
+            healthy = !RetryPolicy.isTransportFailure(ex) && lease.channel().isConnected();
+            router.operation(lease.endpoint(), healthy);
+          }
+          Duration backoff = policy.backoff(attempt, ex, System.nanoTime() - started);
+          if (backoff == null) {
+            if (policy.isRetryable(ex)) {
+              log.error("Caught exception [{}]", ex.getMessage());
+            } else {
+              log.debug("Caught exception [{}], not retrying", ex.getMessage());
+            }
+            throw ex instanceof SftpClientException
+              ? (SftpClientException) ex : new SftpClientException(ex);
+          }
+
+          log.warn("Caught exception [{}], retrying in [{}] ms", ex.getMessage(),
+            backoff.toMillis());
+          metrics.retry(operation, ex);
+          if (lease != null && !healthy) {
+            lease.markBroken();
+            lease.close();
+            lease = null;
+          }
+          sleep(backoff);
         }
       }
-      throw retryEx;
-    } catch (JSchException ex) {
-      disconnect();
-      throw new SftpClientException(ex);
     } finally {
-      if (channel != null) {
-        channel.disconnect();
+      metrics.operation(operation, System.nanoTime() - started, succeeded);
+      if (lease != null) {
+        if (!healthy) {
+          lease.markBroken();
+        }
+        lease.close();
       }
     }
   }
 
-  private ChannelSftp reconnectChannelOnException() throws JSchException {
+  static void sleep(Duration duration) {
     try {
-      ChannelSftp channel = (ChannelSftp) jschSession.get().openChannel("sftp");
-      channel.connect();
-      return channel;
-    } catch (Exception e) {
-      log.warn("Trying to reconnect because of [{}]", e.getMessage());
-      connect();
-      ChannelSftp channel = (ChannelSftp) jschSession.get().openChannel("sftp");
-      channel.connect();
-      return channel;
+      Thread.sleep(duration.toMillis(), (int) (duration.toNanos() % 1_000_000));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SftpClientException(e);
     }
   }
 
+  /**
+   * Pool for a file transfer, compressed sessions come from their own pool in adaptive mode.
+   */
+  private SessionPool poolFor(boolean compressed) {
+    return compressed && compressedPool != null ? compressedPool : sessionPool;
+  }
+
+  private void reportCompression(String operation, boolean compressed, File file, long started) {
+    if (compression == Compression.OFF) {
+      return;
+    }
+    metrics.compression(operation, compressed, file.length(), System.nanoTime() - started);
+  }
+
+  private static Properties sessionConfig(SftpClientBuilder builder, boolean compressed) {
+    Properties config = new Properties();
+    config.put("StrictHostKeyChecking", "no");
+    builder.algorithmProfile.apply(config);
+    if (compressed) {
+      config.put("compression.s2c", "zlib@openssh.com,zlib,none");
+      config.put("compression.c2s", "zlib@openssh.com,zlib,none");
+      config.put("compression_level", String.valueOf(builder.compressionLevel));
+    }
+    config.putAll(builder.sessionConfig);
+    return config;
+  }
+
+  /**
+   * Opens session to the best endpoint, see {@link EndpointRouter}, failing over to the next one
+   * when it cannot connect.
+   */
+  /**
+   * @param socketFactory socket factory for the session, or null for the default one
+   */
+  private Session openSession(Properties config, SocketFactory socketFactory)
+    throws JSchException {
+    JSchException failure = null;
+    List<Endpoint> tried = new ArrayList<>();
+    Endpoint endpoint;
+    while ((endpoint = router.reserve(tried)) != null) {
+      tried.add(endpoint);
+      long started = System.nanoTime();
+      boolean opened = false;
+      try {
+        Session session = jsch.getSession(username, endpoint.host(), endpoint.port());
+        session.setConfig(config);
+        if (socketFactory != null) {
+          session.setSocketFactory(socketFactory);
+        }
+        boolean traced = wireTraceSampling > 0
+          && sessionsOpened.getAndIncrement() % wireTraceSampling == 0;
+        CustomJSch.traceCurrentThread(traced);
+        try {
+          session.connect();
+        } finally {
+          CustomJSch.traceCurrentThread(false);
+        }
+        opened = true;
+        router.connected(endpoint, System.nanoTime() - started);
+        return session;
+      } catch (JSchException e) {
+        log.warn("Cannot connect to [{}]: [{}]", endpoint, e.getMessage());
+        router.connectFailed(endpoint);
+        failure = e;
+      } finally {
+        router.release(endpoint);
+        metrics.sessionOpened(System.nanoTime() - started, opened);
+      }
+    }
+    throw failure;
+  }
+
+  private int sessions(Endpoint endpoint) {
+    int sessions = sessionPool.sessions(endpoint);
+    return compressedPool == null ? sessions : sessions + compressedPool.sessions(endpoint);
+  }
+
+  /**
+   * Latency, error rate and number of sessions of every endpoint the client is built with.
+   */
+  public List<EndpointStats> endpointStats() {
+    return router.stats();
+  }
+
   /**
    * The operation doesn't have result, thus doesn't return anything, but it's convenient to have
    * it, because it helps avoid having return statement in all the places, where this operation is
@@ -248,20 +1387,129 @@ public class SftpClient {
    * <p>
    * @param op operation to do in sftp
    */
-  private void doInSftp(FileOp op) {
-    doInSftp(channel -> {
+  void doInSftp(String operation, FileOp op) {
+    doInSftp(operation, channel -> {
       op.process(channel);
       return null;
     });
   }
 
+  /**
+   * Stream of remote file that gives its channel back to the pool on close. Channel that failed
+   * reading is not reused.
+   */
+  private static class LeasedInputStream extends FilterInputStream {
+    private final ChannelLease lease;
+
+    private LeasedInputStream(InputStream in, ChannelLease lease) {
+      super(in);
+      this.lease = lease;
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (IOException e) {
+        lease.markBroken();
+        throw e;
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (IOException e) {
+        lease.markBroken();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } catch (IOException e) {
+        lease.markBroken();
+        throw e;
+      } finally {
+        lease.close();
+      }
+    }
+  }
+
+  /**
+   * Stream that feeds bytes read through it into checksum.
+   */
+  private static class HashingInputStream extends FilterInputStream {
+    private final Checksum.Hasher hasher;
+
+    private HashingInputStream(InputStream in, Checksum.Hasher hasher) {
+      super(in);
+      this.hasher = hasher;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        hasher.update(new byte[]{(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        hasher.update(b, off, read);
+      }
+      return read;
+    }
+  }
+
+  /**
+   * Stream that counts bytes read through it.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+  }
+
+  @FunctionalInterface
+  private interface EntryMapper<T> {
+    T map(String remoteDir, LsEntry entry);
+  }
+
   @FunctionalInterface
-  private interface FileOp {
+  interface FileOp {
     public void process(ChannelSftp channel) throws SftpException;
   }
 
   @FunctionalInterface
-  private interface ReturningFileOp<T> {
+  interface ReturningFileOp<T> {
     public T process(ChannelSftp channel) throws SftpException;
   }
 }
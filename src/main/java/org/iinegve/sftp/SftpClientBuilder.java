@@ -2,13 +2,50 @@ package org.iinegve.sftp;
 
 import com.jcraft.jsch.CustomJSch;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public final class SftpClientBuilder {
 
-  private String host;
-  private int port;
-  private String username;
-  private byte[] privateKey;
-  private CustomJSch jsch;
+  String host;
+  int port;
+  List<Endpoint> endpoints = new ArrayList<>();
+  boolean spreadSessions;
+  String username;
+  byte[] privateKey;
+  CustomJSch jsch;
+  Duration channelIdleTimeout = Duration.ofSeconds(30);
+  int maxIdleChannels = 4;
+  int minSessions = 1;
+  int maxSessions = 4;
+  int maxChannelsPerSession = 8;
+  Duration borrowTimeout = Duration.ofSeconds(30);
+  Duration sessionIdleTimeout = Duration.ofMinutes(5);
+  boolean validateOnBorrow = true;
+  Duration keepAliveInterval;
+  int transferParallelism = 4;
+  long segmentSize = 64L * 1024 * 1024;
+  int segmentParallelism = 4;
+  int walkParallelism = 4;
+  int batchParallelism = 8;
+  int resumeAttempts = 5;
+  RetryPolicy retryPolicy = RetryPolicy.retryPolicy().build();
+  SftpMetrics metrics = SftpMetrics.NOOP;
+  Duration cacheTtl;
+  int cacheMaxEntries;
+  int bulkRequests = 16;
+  int windowSize = 2 * 1024 * 1024;
+  int packetSize = 32 * 1024;
+  int copyBufferSize = 32 * 1024;
+  long bandwidth;
+  Compression compression = Compression.OFF;
+  int compressionLevel = 6;
+  AlgorithmProfile algorithmProfile = AlgorithmProfile.DEFAULT;
+  int wireTraceSampling;
+  Map<String, String> sessionConfig = new LinkedHashMap<>();
 
   public SftpClientBuilder host(String host) {
     this.host = host;
@@ -20,6 +57,26 @@ public final class SftpClientBuilder {
     return this;
   }
 
+  /**
+   * Adds one of the endpoints that serve the same files, instead of a single host and port. New
+   * sessions go to the fastest and healthiest endpoint, and fail over to the next one when it's
+   * down. See {@link SftpClient#endpointStats()} for what the client knows about them.
+   */
+  public SftpClientBuilder endpoint(String host, int port) {
+    this.endpoints.add(Endpoint.of(host, port));
+    return this;
+  }
+
+  /**
+   * Takes number of sessions already open to an endpoint into account when picking an endpoint
+   * for a new session, so that parallel transfers run over all the endpoints and aggregate their
+   * bandwidth. Off by default, then sessions go to the fastest endpoint.
+   */
+  public SftpClientBuilder spreadSessions(boolean spreadSessions) {
+    this.spreadSessions = spreadSessions;
+    return this;
+  }
+
   public SftpClientBuilder username(String username) {
     this.username = username;
     return this;
@@ -30,21 +87,373 @@ public final class SftpClientBuilder {
     return this;
   }
 
+  /**
+   * JSch instance to open sessions with. It can be shared by many clients: identity added to it
+   * once with {@link CustomJSch#addRsaIdentity(byte[])} is used by all of them, then private key
+   * doesn't have to be given to every builder and isn't parsed again. By default every client
+   * gets its own instance.
+   */
   public SftpClientBuilder jsch(CustomJSch jsch) {
     this.jsch = jsch;
     return this;
   }
 
+  /**
+   * How long opened sftp channel is kept in session cache without being used. Default is 30
+   * seconds.
+   */
+  public SftpClientBuilder channelIdleTimeout(Duration channelIdleTimeout) {
+    this.channelIdleTimeout = channelIdleTimeout;
+    return this;
+  }
+
+  /**
+   * How many opened, but not used at the moment sftp channels are kept per session. Zero turns
+   * channel reuse off. Default is 4.
+   */
+  public SftpClientBuilder maxIdleChannels(int maxIdleChannels) {
+    this.maxIdleChannels = maxIdleChannels;
+    return this;
+  }
+
+  /**
+   * How many sessions are kept open even if they are not used. Default is 1.
+   */
+  public SftpClientBuilder minSessions(int minSessions) {
+    this.minSessions = minSessions;
+    return this;
+  }
+
+  /**
+   * Upper bound of sessions, that is ssh connections, opened to the server at the same time.
+   * Default is 4.
+   */
+  public SftpClientBuilder maxSessions(int maxSessions) {
+    this.maxSessions = maxSessions;
+    return this;
+  }
+
+  /**
+   * How many channels, that is concurrent operations, a single session carries. Servers usually
+   * limit that, for example, OpenSSH allows 10 by default. Default is 8.
+   */
+  public SftpClientBuilder maxChannelsPerSession(int maxChannelsPerSession) {
+    this.maxChannelsPerSession = maxChannelsPerSession;
+    return this;
+  }
+
+  /**
+   * How long an operation waits for a channel, when all the sessions are busy. Default is 30
+   * seconds.
+   */
+  public SftpClientBuilder borrowTimeout(Duration borrowTimeout) {
+    this.borrowTimeout = borrowTimeout;
+    return this;
+  }
+
+  /**
+   * How long a session, that has no channels in use, is kept open above {@code minSessions}.
+   * Default is 5 minutes.
+   */
+  public SftpClientBuilder sessionIdleTimeout(Duration sessionIdleTimeout) {
+    this.sessionIdleTimeout = sessionIdleTimeout;
+    return this;
+  }
+
+  /**
+   * Whether to check that session is still connected before giving it out. Default is true.
+   */
+  public SftpClientBuilder validateOnBorrow(boolean validateOnBorrow) {
+    this.validateOnBorrow = validateOnBorrow;
+    return this;
+  }
+
+  /**
+   * How often background thread sends keepalive on idle sessions, checks them with a round trip
+   * that has to be answered within the interval, drops the dead ones and opens sessions back up
+   * to {@code minSessions}. It starts with {@code connect()} or the first
+   * operation, and runs until {@code disconnect()}. Off by default, then dead session is found out
+   * only by the next operation.
+   */
+  public SftpClientBuilder keepAliveInterval(Duration keepAliveInterval) {
+    this.keepAliveInterval = keepAliveInterval;
+    return this;
+  }
+
+  /**
+   * How many files batch upload and download transfer at the same time. Default is 4.
+   */
+  public SftpClientBuilder transferParallelism(int transferParallelism) {
+    this.transferParallelism = transferParallelism;
+    return this;
+  }
+
+  /**
+   * Size of a byte range fetched on its own channel by segmented download. Default is 64 MiB.
+   */
+  public SftpClientBuilder segmentSize(long segmentSize) {
+    this.segmentSize = segmentSize;
+    return this;
+  }
+
+  /**
+   * How many segments of a single file segmented download fetches at the same time. Default is 4.
+   */
+  public SftpClientBuilder segmentParallelism(int segmentParallelism) {
+    this.segmentParallelism = segmentParallelism;
+    return this;
+  }
+
+  /**
+   * How many directories recursive walk lists at the same time. Default is 4.
+   */
+  public SftpClientBuilder walkParallelism(int walkParallelism) {
+    this.walkParallelism = walkParallelism;
+    return this;
+  }
+
+  /**
+   * How many channels bulk operations on remote paths, like deleting many files, use at the same
+   * time. Default is 8.
+   */
+  public SftpClientBuilder batchParallelism(int batchParallelism) {
+    this.batchParallelism = batchParallelism;
+    return this;
+  }
+
+  /**
+   * When and how soon failed operations are tried again. Default is a second attempt after about
+   * 100 milliseconds, but not for errors that won't go away, like missing file. Operations that
+   * consume caller's stream are never retried.
+   */
+  public SftpClientBuilder retryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /**
+   * Where to report operation latencies, retries, session and channel opening, for example,
+   * {@link RecordingMetrics}. Default is {@link SftpMetrics#NOOP}.
+   */
+  public SftpClientBuilder metrics(SftpMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * How many times resumable transfer is tried, each next attempt continues from where the
+   * previous one stopped. Default is 5.
+   */
+  public SftpClientBuilder resumeAttempts(int resumeAttempts) {
+    this.resumeAttempts = resumeAttempts;
+    return this;
+  }
+
+  /**
+   * Turns on cache of directory listings and file attributes. Changes made through the client
+   * invalidate affected paths right away, while changes made by others are seen only after
+   * {@code ttl}. Off by default.
+   * <p>
+   * @param ttl        how long cached entry is used
+   * @param maxEntries how many entries are kept, least recently used are evicted above that
+   */
+  public SftpClientBuilder metadataCache(Duration ttl, int maxEntries) {
+    this.cacheTtl = ttl;
+    this.cacheMaxEntries = maxEntries;
+    return this;
+  }
+
+  /**
+   * How many sftp read or write requests are sent ahead without waiting for replies, each of them
+   * is about 32 KiB. On links with high latency raising it gives most of the single transfer
+   * throughput. Default is 16.
+   */
+  public SftpClientBuilder bulkRequests(int bulkRequests) {
+    this.bulkRequests = bulkRequests;
+    return this;
+  }
+
+  /**
+   * How many bytes server may send on a channel before it has to wait for the client to
+   * acknowledge them. Limits download throughput to window size per round trip. Default is 2 MiB.
+   */
+  public SftpClientBuilder windowSize(int windowSize) {
+    this.windowSize = windowSize;
+    return this;
+  }
+
+  /**
+   * The largest data packet server may send on a channel, up to 255 KiB, leaving room for
+   * headers within JSch's 256 KiB limit. Default is 32 KiB.
+   */
+  public SftpClientBuilder packetSize(int packetSize) {
+    this.packetSize = packetSize;
+    return this;
+  }
+
+  /**
+   * Size of the buffer used to copy downloaded data into local file or stream. Default is 32 KiB.
+   */
+  public SftpClientBuilder copyBufferSize(int copyBufferSize) {
+    this.copyBufferSize = copyBufferSize;
+    return this;
+  }
+
+  /**
+   * Turns on tuning from measured round trip time: window size and requests in flight are raised
+   * to cover bandwidth-delay product of the link, but never lowered below what's configured. Off
+   * by default.
+   * <p>
+   * @param bytesPerSecond expected bandwidth of the link to the server
+   */
+  public SftpClientBuilder autoTune(long bytesPerSecond) {
+    this.bandwidth = bytesPerSecond;
+    return this;
+  }
+
+  /**
+   * Whether sessions compress the traffic, see {@link Compression}. It pays off for text like CSV
+   * or XML on slow links, but costs CPU on both ends. Default is {@link Compression#OFF}.
+   */
+  public SftpClientBuilder compression(Compression compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * Zlib level of compressed sessions, from 1, the fastest, to 9, the smallest. Default is 6.
+   */
+  public SftpClientBuilder compressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  /**
+   * Which ciphers, MACs and key exchanges are preferred, see {@link AlgorithmProfile}. Default is
+   * {@link AlgorithmProfile#DEFAULT}, that is JSch's own order.
+   */
+  public SftpClientBuilder algorithmProfile(AlgorithmProfile algorithmProfile) {
+    this.algorithmProfile = algorithmProfile;
+    return this;
+  }
+
+  /**
+   * Traces one in {@code sessions} sessions: JSch log of its handshake and authentication, and
+   * later of its reader thread, like rekeys and connection loss, but not of disconnect, goes to
+   * {@code org.iinegve.CustomJSch.trace} logger, which is meant to be set to debug, while the
+   * usual {@code org.iinegve.CustomJSch} stays at warn. It helps to see what goes on with a partner
+   * without flooding the log. Zero turns it off, it's the default.
+   */
+  public SftpClientBuilder wireTraceSampling(int sessions) {
+    this.wireTraceSampling = sessions;
+    return this;
+  }
+
+  /**
+   * Sets JSch session config option, for example, {@code "ServerAliveCountMax"}. Options set here
+   * override the ones client sets itself, which is only {@code StrictHostKeyChecking=no}.
+   */
+  public SftpClientBuilder sessionConfig(String key, String value) {
+    this.sessionConfig.put(key, value);
+    return this;
+  }
+
+  /**
+   * Endpoints to connect to, the one given with host and port when there are no others.
+   */
+  List<Endpoint> endpoints() {
+    return endpoints.isEmpty() ? List.of(Endpoint.of(host, port)) : List.copyOf(endpoints);
+  }
+
   public SftpClient build() {
-    if (privateKey == null || privateKey.length == 0) {
+    boolean hasKey = privateKey != null && privateKey.length > 0;
+    if (!hasKey && (jsch == null || !jsch.hasIdentity())) {
       throw new IllegalArgumentException("Private key must be set");
     }
+    if (channelIdleTimeout == null || channelIdleTimeout.isNegative()) {
+      throw new IllegalArgumentException(
+        "Channel idle timeout must not be neither null nor negative");
+    }
+    if (maxIdleChannels < 0) {
+      throw new IllegalArgumentException("Max idle channels must not be negative");
+    }
+    if (minSessions < 0 || maxSessions < 1 || minSessions > maxSessions) {
+      throw new IllegalArgumentException("Sessions must be 0 <= min <= max and max >= 1");
+    }
+    if (maxChannelsPerSession < 1) {
+      throw new IllegalArgumentException("Max channels per session must be positive");
+    }
+    if (transferParallelism < 1) {
+      throw new IllegalArgumentException("Transfer parallelism must be positive");
+    }
+    if (walkParallelism < 1) {
+      throw new IllegalArgumentException("Walk parallelism must be positive");
+    }
+    if (batchParallelism < 1) {
+      throw new IllegalArgumentException("Batch parallelism must be positive");
+    }
+    if (metrics == null) {
+      throw new IllegalArgumentException("Metrics must be set, use SftpMetrics.NOOP for none");
+    }
+    if (retryPolicy == null) {
+      throw new IllegalArgumentException("Retry policy must be set");
+    }
+    if (resumeAttempts < 1) {
+      throw new IllegalArgumentException("Resume attempts must be positive");
+    }
+    if (segmentSize < 1 || segmentParallelism < 1) {
+      throw new IllegalArgumentException("Segment size and parallelism must be positive");
+    }
+    if (cacheTtl != null && (cacheTtl.isNegative() || cacheMaxEntries < 1)) {
+      throw new IllegalArgumentException("Cache ttl must not be negative and max entries positive");
+    }
+    if (borrowTimeout == null || borrowTimeout.isNegative()) {
+      throw new IllegalArgumentException("Borrow timeout must not be neither null nor negative");
+    }
+    if (keepAliveInterval != null
+      && (keepAliveInterval.isNegative() || keepAliveInterval.isZero())) {
+      throw new IllegalArgumentException("Keepalive interval must be positive");
+    }
+    if (bulkRequests < 1 || bulkRequests > TransferTuning.MAX_BULK_REQUESTS) {
+      throw new IllegalArgumentException(
+        "Bulk requests must be within 1.." + TransferTuning.MAX_BULK_REQUESTS);
+    }
+    if (packetSize < 1024 || packetSize > TransferTuning.MAX_PACKET_SIZE) {
+      throw new IllegalArgumentException("Packet size must be within 1 KiB..255 KiB");
+    }
+    if (windowSize < packetSize || windowSize > TransferTuning.MAX_WINDOW_SIZE) {
+      throw new IllegalArgumentException("Window size must be within packet size..64 MiB");
+    }
+    if (copyBufferSize < 1) {
+      throw new IllegalArgumentException("Copy buffer size must be positive");
+    }
+    if (bandwidth < 0) {
+      throw new IllegalArgumentException("Auto tune bandwidth must not be negative");
+    }
+    if (wireTraceSampling < 0) {
+      throw new IllegalArgumentException("Wire trace sampling must not be negative");
+    }
+    if (algorithmProfile == null) {
+      throw new IllegalArgumentException("Algorithm profile must be set");
+    }
+    if (compression == null) {
+      throw new IllegalArgumentException("Compression must be set");
+    }
+    if (compressionLevel < 1 || compressionLevel > 9) {
+      throw new IllegalArgumentException("Compression level must be within 1..9");
+    }
+    if (sessionIdleTimeout == null || sessionIdleTimeout.isNegative()) {
+      throw new IllegalArgumentException(
+        "Session idle timeout must not be neither null nor negative");
+    }
 
     if (jsch == null) {
       jsch = new CustomJSch();
     }
-    jsch.addRsaIdentity(privateKey);
+    if (hasKey) {
+      jsch.addRsaIdentity(privateKey);
+    }
 
-    return new SftpClient(host, port, username, jsch);
+    return new SftpClient(this);
   }
 }
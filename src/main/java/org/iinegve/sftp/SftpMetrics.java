@@ -0,0 +1,91 @@
+package org.iinegve.sftp;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Listener of what the client does, to be plugged into a metrics library or to use the built-in
+ * {@link RecordingMetrics}. Compare operation latency with session and channel opening times and
+ * with bytes transferred to see whether slow job waits for handshakes, channel setup or bandwidth.
+ * <p>
+ * Methods are called on the threads that do the work, so they must be thread safe and fast. All of
+ * them do nothing by default, so that implementation overrides only what it needs.
+ */
+public interface SftpMetrics {
+
+  /**
+   * Doesn't record anything, it's the default.
+   */
+  SftpMetrics NOOP = new SftpMetrics() {
+  };
+
+  /**
+   * Operation is done, including time to get a channel and all the retries.
+   * <p>
+   * @param operation name of operation, like upload, download, list, stat, move, delete
+   * @param nanos     how long it took
+   * @param succeeded whether it succeeded
+   */
+  default void operation(String operation, long nanos, boolean succeeded) {
+  }
+
+  /**
+   * Bytes are uploaded or downloaded by an operation.
+   */
+  default void bytesTransferred(String operation, long bytes) {
+  }
+
+  /**
+   * File is transferred with compression turned on, either over compressed session or over plain
+   * one, when adaptive compression decided it's not worth it. Compare bytes of files transferred
+   * over compressed sessions with {@link #compressedWireBytes(long)} to get compression ratio.
+   * <p>
+   * @param operation  upload or download
+   * @param compressed whether session was compressed
+   * @param bytes      size of the file
+   * @param nanos      how long transfer took
+   */
+  default void compression(String operation, boolean compressed, long bytes, long nanos) {
+  }
+
+  /**
+   * Bytes are read from or written to the socket of a compressed session, that is after
+   * compression and encryption, including ssh framing, handshakes and whatever else goes over the
+   * session. Called for every read and write, so it must be as cheap as adding to a counter.
+   */
+  default void compressedWireBytes(long bytes) {
+  }
+
+  /**
+   * Operation failed and is going to be tried again.
+   */
+  default void retry(String operation, Throwable cause) {
+  }
+
+  /**
+   * New session is opened, that is connect, key exchange and authentication, or failed to.
+   */
+  default void sessionOpened(long nanos, boolean succeeded) {
+  }
+
+  /**
+   * Session turned out to be dead when opening a channel on it and is replaced.
+   */
+  default void reconnect() {
+  }
+
+  /**
+   * New sftp channel is opened on a session, or failed to. Channels that are reused don't count.
+   */
+  default void channelOpened(long nanos, boolean succeeded) {
+  }
+
+  /**
+   * Called once, when client is created, with current state of session pool to be read whenever
+   * it's needed.
+   * <p>
+   * @param sessions       number of open sessions
+   * @param leasedChannels number of channels in use
+   */
+  default void poolGauges(IntSupplier sessions, IntSupplier leasedChannels) {
+  }
+}
@@ -0,0 +1,283 @@
+package org.iinegve.sftp;
+
+import org.iinegve.sftp.SyncManifest.FileState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Incremental mirror of a directory tree between sftp and local disk, in either direction.
+ * <p>
+ * Only new and modified files are transferred, file is considered modified when its size or
+ * modification time differ from the destination. Transferred files get modification time of the
+ * source, so the next run sees them as unchanged.
+ * <p>
+ * With a manifest file, the mirror remembers what it transferred and compares the source against
+ * the manifest instead of the destination: pull doesn't look at local files, push doesn't list
+ * remote directories at all, so a run costs only as much as there are changes.
+ * <pre>
+ *   SyncReport report = new SftpMirror(sftp)
+ *     .manifest(new File("state/outbox.manifest"))
+ *     .deleteExtraneous(true)
+ *     .push(new File("outbox"), "inbox");
+ * </pre>
+ */
+public final class SftpMirror {
+
+  private static final Logger log = LoggerFactory.getLogger(SftpMirror.class);
+
+  private final SftpClient sftp;
+  private int parallelism = 4;
+  private boolean deleteExtraneous;
+  private File manifestFile;
+
+  public SftpMirror(SftpClient sftp) {
+    this.sftp = sftp;
+  }
+
+  /**
+   * How many files are transferred at the same time. Default is 4.
+   */
+  public SftpMirror parallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Whether to delete destination files that are not in the source anymore. With manifest only
+   * files transferred by the mirror earlier are deleted. Off by default.
+   */
+  public SftpMirror deleteExtraneous(boolean deleteExtraneous) {
+    this.deleteExtraneous = deleteExtraneous;
+    return this;
+  }
+
+  /**
+   * Local file to keep the state of the mirror between runs. Each mirrored pair of directories
+   * needs its own manifest. No manifest by default.
+   */
+  public SftpMirror manifest(File manifestFile) {
+    this.manifestFile = manifestFile;
+    return this;
+  }
+
+  /**
+   * Mirrors remote directory tree into a local directory. Remote subdirectory that cannot be
+   * listed is skipped, and local files underneath it are not deleted as extraneous.
+   */
+  public SyncReport pull(String remoteDir, File localDir) {
+    SyncManifest manifest = manifestFile == null ? null : SyncManifest.load(manifestFile);
+    Set<String> unreadable = ConcurrentHashMap.newKeySet();
+    Map<String, RemoteFile> remote = remoteFiles(remoteDir, unreadable);
+
+    List<String> changed = new ArrayList<>();
+    for (Map.Entry<String, RemoteFile> entry : remote.entrySet()) {
+      File local = new File(localDir, entry.getKey());
+      FileState source = state(entry.getValue());
+      boolean upToDate = manifest == null
+        ? local.isFile() && source.equals(state(local))
+        : source.equals(manifest.get(entry.getKey())) && local.isFile();
+      if (!upToDate) {
+        changed.add(entry.getKey());
+      }
+    }
+
+    long started = System.nanoTime();
+    List<TransferResult> results = Parallel.map(changed, parallelism, path -> {
+      RemoteFile source = remote.get(path);
+      File local = new File(localDir, path);
+      return TransferResult.measure(source.path(), local.getPath(), () -> {
+        local.getParentFile().mkdirs();
+        sftp.download(source.path(), local);
+        local.setLastModified(source.modifiedAt().toEpochMilli());
+        if (manifest != null) {
+          manifest.put(path, state(source));
+        }
+        return local.length();
+      });
+    });
+    TransferReport transfers =
+      new TransferReport(results, Duration.ofNanos(System.nanoTime() - started));
+
+    List<String> deleted = new ArrayList<>();
+    List<String> notDeleted = new ArrayList<>();
+    if (deleteExtraneous) {
+      Iterable<String> existing =
+        manifest == null ? localFiles(localDir).keySet() : manifest.paths();
+      for (String path : extraneous(existing, remote)) {
+        if (isUnder(path, unreadable)) {
+          continue;
+        }
+        File local = new File(localDir, path);
+        if (local.delete() || !local.exists()) {
+          deleted.add(local.getPath());
+          if (manifest != null) {
+            manifest.remove(path);
+          }
+        } else {
+          notDeleted.add(local.getPath());
+        }
+      }
+    }
+
+    if (manifest != null) {
+      manifest.save();
+    }
+    SyncReport report = new SyncReport(transfers, remote.size() - changed.size(), deleted,
+      notDeleted);
+    log.info("Pulled [{}] into [{}]: {}", remoteDir, localDir, report);
+    return report;
+  }
+
+  /**
+   * Mirrors local directory tree into a remote directory, creating missing remote directories.
+   * <p>
+   * @throws IllegalArgumentException when local directory doesn't exist, as it would look like
+   *                                  all the files are gone and remote ones are to be deleted
+   */
+  public SyncReport push(File localDir, String remoteDir) {
+    if (!localDir.isDirectory()) {
+      throw new IllegalArgumentException("Local directory [" + localDir + "] doesn't exist");
+    }
+    SyncManifest manifest = manifestFile == null ? null : SyncManifest.load(manifestFile);
+    Map<String, File> local = localFiles(localDir);
+    Map<String, RemoteFile> remote = null;
+    if (manifest == null) {
+      sftp.createDirectories(remoteDir);
+      remote = remoteFiles(remoteDir, ConcurrentHashMap.newKeySet());
+    }
+
+    List<String> changed = new ArrayList<>();
+    for (Map.Entry<String, File> entry : local.entrySet()) {
+      FileState source = state(entry.getValue());
+      boolean upToDate = manifest == null
+        ? remote.containsKey(entry.getKey()) && source.equals(state(remote.get(entry.getKey())))
+        : source.equals(manifest.get(entry.getKey()));
+      if (!upToDate) {
+        changed.add(entry.getKey());
+      }
+    }
+
+    TreeSet<String> dirs = new TreeSet<>();
+    changed.forEach(path -> dirs.add(RemoteFile.parent(RemoteFile.join(remoteDir, path))));
+    Parallel.map(dirs, parallelism, dir -> {
+      sftp.createDirectories(dir);
+      return dir;
+    });
+
+    long started = System.nanoTime();
+    List<TransferResult> results = Parallel.map(changed, parallelism, path -> {
+      File source = local.get(path);
+      String destination = RemoteFile.join(remoteDir, path);
+      return TransferResult.measure(source.getPath(), destination, () -> {
+        FileState state = state(source);
+        sftp.upload(source, RemoteFile.parent(destination));
+        sftp.setModificationTime(destination, Instant.ofEpochSecond(state.mtime));
+        if (manifest != null) {
+          manifest.put(path, state);
+        }
+        return state.size;
+      });
+    });
+    TransferReport transfers =
+      new TransferReport(results, Duration.ofNanos(System.nanoTime() - started));
+
+    List<String> deleted = new ArrayList<>();
+    List<String> notDeleted = new ArrayList<>();
+    if (deleteExtraneous) {
+      List<String> extraneous =
+        extraneous(manifest == null ? remote.keySet() : manifest.paths(), local);
+      List<String> remotePaths = extraneous.stream()
+        .map(path -> RemoteFile.join(remoteDir, path))
+        .collect(toList());
+      List<PathResult> outcomes = sftp.deleteAll(remotePaths, parallelism).results();
+      for (int i = 0; i < extraneous.size(); i++) {
+        PathResult outcome = outcomes.get(i);
+        if (outcome.outcome() == PathResult.Outcome.FAILED) {
+          notDeleted.add(outcome.path());
+        } else {
+          deleted.add(outcome.path());
+          if (manifest != null) {
+            manifest.remove(extraneous.get(i));
+          }
+        }
+      }
+    }
+
+    if (manifest != null) {
+      manifest.save();
+    }
+    SyncReport report = new SyncReport(transfers, local.size() - changed.size(), deleted,
+      notDeleted);
+    log.info("Pushed [{}] into [{}]: {}", localDir, remoteDir, report);
+    return report;
+  }
+
+  /**
+   * Regular files under remote directory by relative path.
+   * <p>
+   * @param unreadable gets relative paths of subdirectories that are skipped, as they cannot be
+   *                   listed
+   */
+  private Map<String, RemoteFile> remoteFiles(String remoteDir, Set<String> unreadable) {
+    String prefix = RemoteFile.join(remoteDir, "");
+    Map<String, RemoteFile> files = new HashMap<>();
+    try (Stream<RemoteFile> walk = sftp.walk(remoteDir, Integer.MAX_VALUE, Filters.regularFiles(),
+      dir -> false, dir -> unreadable.add(dir.substring(prefix.length())))) {
+      walk.forEach(file -> files.put(file.path().substring(prefix.length()), file));
+    }
+    return files;
+  }
+
+  private static Map<String, File> localFiles(File localDir) {
+    Path root = localDir.toPath();
+    Map<String, File> files = new HashMap<>();
+    if (!localDir.isDirectory()) {
+      return files;
+    }
+    try (Stream<Path> walk = Files.walk(root)) {
+      walk.filter(Files::isRegularFile).forEach(path -> files.put(
+        root.relativize(path).toString().replace(File.separatorChar, '/'), path.toFile()));
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+    return files;
+  }
+
+  private static List<String> extraneous(Iterable<String> existing, Map<String, ?> source) {
+    List<String> paths = new ArrayList<>();
+    existing.forEach(paths::add);
+    return paths.stream().filter(path -> !source.containsKey(path)).sorted().collect(toList());
+  }
+
+  private static boolean isUnder(String path, Set<String> dirs) {
+    return dirs.stream().anyMatch(dir -> path.startsWith(dir + "/"));
+  }
+
+  private static FileState state(RemoteFile file) {
+    return new FileState(file.size(), file.modifiedAt().getEpochSecond());
+  }
+
+  private static FileState state(File file) {
+    return new FileState(file.length(), file.lastModified() / 1000);
+  }
+}
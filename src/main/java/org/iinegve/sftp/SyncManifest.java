@@ -0,0 +1,110 @@
+package org.iinegve.sftp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Size and modification time of source files as of the last successful transfer, keyed by path
+ * relative to mirrored directory. One line per file: {@code size<TAB>mtimeSeconds<TAB>path}.
+ */
+class SyncManifest {
+
+  private final File file;
+  private final Map<String, FileState> states = new ConcurrentHashMap<>();
+
+  private SyncManifest(File file) {
+    this.file = file;
+  }
+
+  static SyncManifest load(File file) {
+    SyncManifest manifest = new SyncManifest(file);
+    if (!file.exists()) {
+      return manifest;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length == 3) {
+          manifest.states.put(parts[2],
+            new FileState(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new SftpClientException(e);
+    }
+    return manifest;
+  }
+
+  FileState get(String path) {
+    return states.get(path);
+  }
+
+  Iterable<String> paths() {
+    return states.keySet();
+  }
+
+  void put(String path, FileState state) {
+    states.put(path, state);
+  }
+
+  void remove(String path) {
+    states.remove(path);
+  }
+
+  /**
+   * Writes manifest into a temporary file first, so that interrupted save doesn't leave broken
+   * manifest behind.
+   */
+  void save() {
+    Path target = file.toPath().toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent());
+      try (BufferedWriter writer = Files.newBufferedWriter(temp, UTF_8)) {
+        for (Map.Entry<String, FileState> entry : states.entrySet()) {
+          writer.write(entry.getValue().size + "\t" + entry.getValue().mtime + "\t"
+            + entry.getKey());
+          writer.newLine();
+        }
+      }
+      Files.move(temp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new SftpClientException(e);
+    }
+  }
+
+  static class FileState {
+    final long size;
+    final long mtime;
+
+    FileState(long size, long mtime) {
+      this.size = size;
+      this.mtime = mtime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof FileState)) {
+        return false;
+      }
+      FileState that = (FileState) o;
+      return size == that.size && mtime == that.mtime;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(size) * 31 + Long.hashCode(mtime);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package org.iinegve.sftp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a mirror run: what was transferred, how many files were up to date and what was
+ * deleted on the destination side.
+ */
+public final class SyncReport {
+
+  private final TransferReport transfers;
+  private final int unchanged;
+  private final List<String> deleted;
+  private final List<String> notDeleted;
+
+  SyncReport(TransferReport transfers, int unchanged, List<String> deleted,
+             List<String> notDeleted) {
+    this.transfers = transfers;
+    this.unchanged = unchanged;
+    this.deleted = Collections.unmodifiableList(deleted);
+    this.notDeleted = Collections.unmodifiableList(notDeleted);
+  }
+
+  /**
+   * New and modified files that were transferred, with per-file results.
+   */
+  public TransferReport transfers() {
+    return transfers;
+  }
+
+  /**
+   * Number of files skipped, because destination already had them.
+   */
+  public int unchanged() {
+    return unchanged;
+  }
+
+  /**
+   * Destination files deleted, because source doesn't have them anymore.
+   */
+  public List<String> deleted() {
+    return deleted;
+  }
+
+  /**
+   * Destination files that had to be deleted, but deletion failed.
+   */
+  public List<String> notDeleted() {
+    return notDeleted;
+  }
+
+  public boolean isSuccessful() {
+    return transfers.isSuccessful() && notDeleted.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "SyncReport{" + transfers + ", unchanged=" + unchanged + ", deleted=" + deleted.size()
+      + ", notDeleted=" + notDeleted.size() + "}";
+  }
+}
@@ -0,0 +1,71 @@
+package org.iinegve.sftp;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Per-file results of a batch transfer together with aggregate numbers for the whole batch.
+ */
+public final class TransferReport {
+
+  private final List<TransferResult> results;
+  private final Duration elapsed;
+
+  TransferReport(List<TransferResult> results, Duration elapsed) {
+    this.results = Collections.unmodifiableList(results);
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Results in the same order as files were given to the batch.
+   */
+  public List<TransferResult> results() {
+    return results;
+  }
+
+  public List<TransferResult> failed() {
+    return results.stream().filter(r -> !r.isSuccessful()).collect(toList());
+  }
+
+  public boolean isSuccessful() {
+    return results.stream().allMatch(TransferResult::isSuccessful);
+  }
+
+  public long succeededCount() {
+    return results.stream().filter(TransferResult::isSuccessful).count();
+  }
+
+  public long totalBytes() {
+    return results.stream().mapToLong(TransferResult::bytes).sum();
+  }
+
+  /**
+   * Wall-clock time of the whole batch.
+   */
+  public Duration elapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Aggregate throughput of the batch, that is all transferred bytes over wall-clock time.
+   */
+  public double bytesPerSecond() {
+    long nanos = Math.max(elapsed.toNanos(), 1);
+    return totalBytes() * 1_000_000_000.0 / nanos;
+  }
+
+  public double filesPerSecond() {
+    long nanos = Math.max(elapsed.toNanos(), 1);
+    return succeededCount() * 1_000_000_000.0 / nanos;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferReport{files=" + results.size() + ", failed=" + failed().size()
+      + ", bytes=" + totalBytes() + ", elapsed=" + elapsed
+      + ", bytesPerSecond=" + (long) bytesPerSecond() + "}";
+  }
+}
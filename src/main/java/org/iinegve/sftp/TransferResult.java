@@ -0,0 +1,83 @@
+package org.iinegve.sftp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Outcome of a single file transfer within a batch.
+ */
+public final class TransferResult {
+
+  private static final Logger log = LoggerFactory.getLogger(TransferResult.class);
+
+  private final String source;
+  private final String destination;
+  private final long bytes;
+  private final Duration duration;
+  private final Exception error;
+
+  TransferResult(String source, String destination, long bytes, Duration duration,
+                 Exception error) {
+    this.source = source;
+    this.destination = destination;
+    this.bytes = bytes;
+    this.duration = duration;
+    this.error = error;
+  }
+
+  /**
+   * Runs transfer and turns its outcome into result, so that failure of a single file doesn't
+   * stop the whole batch.
+   * <p>
+   * @param transfer does the transfer and gives number of transferred bytes
+   */
+  static TransferResult measure(String source, String destination, Supplier<Long> transfer) {
+    long started = System.nanoTime();
+    try {
+      long bytes = transfer.get();
+      return new TransferResult(source, destination, bytes,
+        Duration.ofNanos(System.nanoTime() - started), null);
+    } catch (RuntimeException e) {
+      log.warn("Cannot transfer [{}] to [{}]: [{}]", source, destination, e.getMessage());
+      return new TransferResult(source, destination, 0,
+        Duration.ofNanos(System.nanoTime() - started), e);
+    }
+  }
+
+  public String source() {
+    return source;
+  }
+
+  public String destination() {
+    return destination;
+  }
+
+  /**
+   * Bytes transferred, zero when transfer failed.
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  public Duration duration() {
+    return duration;
+  }
+
+  public boolean isSuccessful() {
+    return error == null;
+  }
+
+  public Optional<Exception> error() {
+    return Optional.ofNullable(error);
+  }
+
+  @Override
+  public String toString() {
+    return "TransferResult{" + source + " -> " + destination + ", bytes=" + bytes
+      + ", duration=" + duration + (error == null ? "" : ", error=" + error.getMessage()) + "}";
+  }
+}
@@ -0,0 +1,93 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSizes;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+
+/**
+ * Sizes of sftp channel window, packets and the number of read and write requests that are kept
+ * in flight.
+ * <p>
+ * Throughput of a single channel is limited by how much data is in flight within a round trip, so
+ * on a link with high bandwidth-delay product the defaults leave most of the link idle. With
+ * bandwidth set, the client estimates round trip time of each session from how long it takes to
+ * open a channel on it, and raises window and number of requests in flight up to what's needed to
+ * fill the link, but never below what's configured.
+ */
+class TransferTuning {
+
+  /**
+   * JSch asks for about that much data in a single read request.
+   */
+  static final int REQUEST_SIZE = 32 * 1024;
+  static final int MAX_BULK_REQUESTS = 1024;
+  static final int MAX_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * JSch drops session on a packet above 256 KiB, and ssh and sftp headers come on top of data.
+   */
+  static final int MAX_PACKET_SIZE = 255 * 1024;
+
+  /**
+   * Opening sftp channel takes channel open, subsystem request and sftp version exchange.
+   */
+  private static final int CHANNEL_OPEN_ROUND_TRIPS = 3;
+
+  private final int bulkRequests;
+  private final int windowSize;
+  private final int packetSize;
+  private final long bandwidth;
+
+  TransferTuning(int bulkRequests, int windowSize, int packetSize, long bandwidth) {
+    this.bulkRequests = bulkRequests;
+    this.windowSize = windowSize;
+    this.packetSize = packetSize;
+    this.bandwidth = bandwidth;
+  }
+
+  TransferTuning(SftpClientBuilder settings) {
+    this(settings.bulkRequests, settings.windowSize, settings.packetSize, settings.bandwidth);
+  }
+
+  boolean isAdaptive() {
+    return bandwidth > 0;
+  }
+
+  /**
+   * Round trip estimate out of how long it took to open a channel.
+   */
+  static long roundTrip(long channelOpenNanos) {
+    return channelOpenNanos / CHANNEL_OPEN_ROUND_TRIPS;
+  }
+
+  /**
+   * Must be called before the channel is connected, as window and packet size are sent in channel
+   * open request.
+   *
+   * @param roundTripNanos estimated round trip time of the session, zero when not known yet
+   */
+  void beforeConnect(ChannelSftp channel, long roundTripNanos) {
+    ChannelSizes.apply(channel, windowSize(roundTripNanos), packetSize);
+  }
+
+  void afterConnect(ChannelSftp channel, long roundTripNanos) throws JSchException {
+    channel.setBulkRequests(bulkRequests(roundTripNanos));
+  }
+
+  int windowSize(long roundTripNanos) {
+    long needed = 2 * bandwidthDelay(roundTripNanos);
+    return (int) Math.max(windowSize, Math.min(needed, MAX_WINDOW_SIZE));
+  }
+
+  int bulkRequests(long roundTripNanos) {
+    long needed = (bandwidthDelay(roundTripNanos) + REQUEST_SIZE - 1) / REQUEST_SIZE;
+    return (int) Math.max(bulkRequests, Math.min(needed, MAX_BULK_REQUESTS));
+  }
+
+  private long bandwidthDelay(long roundTripNanos) {
+    if (bandwidth <= 0 || roundTripNanos <= 0) {
+      return 0;
+    }
+    return (long) ((double) bandwidth * roundTripNanos / 1_000_000_000L);
+  }
+}
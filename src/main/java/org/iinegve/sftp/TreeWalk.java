@@ -0,0 +1,116 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.SftpException;
+import org.iinegve.sftp.PushStream.Sink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Recursive directory walk that lists up to {@code parallelism} directories at the same time.
+ * <p>
+ * Every listed directory schedules its subdirectories on the same bounded pool, and the walk is
+ * done when there are no directories left, that is the counter of pending directories drops to
+ * zero. Entries are handed over as soon as their directory is listed, in no particular order.
+ * <p>
+ * Links are not followed, so the walk never loops.
+ * <p>
+ * Subdirectory that cannot be listed because of sftp error, like permission denied or directory
+ * removed in the meantime, is skipped and told to {@code unreadable}, so that one bad directory
+ * doesn't fail the whole walk. Failing root, as well as connection failure, still fails the walk.
+ */
+class TreeWalk {
+
+  private static final Logger log = LoggerFactory.getLogger(TreeWalk.class);
+
+  private final Function<String, List<RemoteFile>> lister;
+  private final int maxDepth;
+  private final Predicate<RemoteFile> filter;
+  private final Predicate<RemoteFile> prune;
+  private final Consumer<String> unreadable;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final CompletableFuture<Void> done = new CompletableFuture<>();
+  private volatile boolean stopped;
+
+  /**
+   * @param lister     lists a single directory
+   * @param maxDepth   how deep to go, 1 is entries of the root only
+   * @param filter     which entries to hand over, doesn't affect descending
+   * @param prune      which directories not to descend into
+   * @param unreadable told about subdirectories that are skipped, as they cannot be listed
+   */
+  TreeWalk(Function<String, List<RemoteFile>> lister, int maxDepth, Predicate<RemoteFile> filter,
+           Predicate<RemoteFile> prune, Consumer<String> unreadable) {
+    this.lister = lister;
+    this.maxDepth = maxDepth;
+    this.filter = filter;
+    this.prune = prune;
+    this.unreadable = unreadable;
+  }
+
+  void run(String root, int parallelism, Sink<RemoteFile> sink) throws Exception {
+    ExecutorService executor =
+      Executors.newFixedThreadPool(parallelism, Parallel.daemonThreads("sftp-walk"));
+    try {
+      schedule(executor, root, 1, sink);
+      done.get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      stopped = true;
+      executor.shutdownNow();
+    }
+  }
+
+  private void schedule(ExecutorService executor, String dir, int depth, Sink<RemoteFile> sink) {
+    pending.incrementAndGet();
+    executor.execute(() -> {
+      try {
+        if (!stopped) {
+          visit(executor, dir, depth, sink);
+        }
+      } catch (RuntimeException e) {
+        if (depth > 1 && isSftpError(e)) {
+          log.warn("Skipping directory [{}], as it cannot be listed: [{}]", dir, e.getMessage());
+          unreadable.accept(dir);
+        } else {
+          stopped = true;
+          done.completeExceptionally(e);
+        }
+      } finally {
+        if (pending.decrementAndGet() == 0) {
+          done.complete(null);
+        }
+      }
+    });
+  }
+
+  private static boolean isSftpError(RuntimeException e) {
+    return e.getCause() instanceof SftpException && !RetryPolicy.isTransportFailure(e);
+  }
+
+  private void visit(ExecutorService executor, String dir, int depth, Sink<RemoteFile> sink) {
+    for (RemoteFile file : lister.apply(dir)) {
+      if (stopped) {
+        return;
+      }
+      if (filter.test(file) && !sink.accept(file)) {
+        stopped = true;
+        return;
+      }
+      if (file.isDirectory() && depth < maxDepth && !prune.test(file)) {
+        schedule(executor, file.path(), depth + 1, sink);
+      }
+    }
+  }
+}
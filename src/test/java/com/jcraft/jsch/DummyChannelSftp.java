@@ -18,4 +18,20 @@ public class DummyChannelSftp extends ChannelSftp {
   public Vector ls(String path) {
     return new Vector();
   }
+
+  @Override
+  public void ls(String path, LsEntrySelector selector) {
+    // do nothing
+  }
+
+  @Override
+  public String realpath(String path) throws SftpException {
+    return path;
+  }
+
+  public static SftpATTRS attrs(long size) {
+    SftpATTRS attrs = SftpATTRS.getATTR(new Buffer(new byte[4]));
+    attrs.setSIZE(size);
+    return attrs;
+  }
 }
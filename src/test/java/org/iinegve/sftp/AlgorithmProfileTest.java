@@ -0,0 +1,46 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.JSch;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AlgorithmProfileTest {
+
+  @Test
+  public void keep_jsch_defaults__for_default_profile() {
+    Properties config = new Properties();
+
+    AlgorithmProfile.DEFAULT.apply(config);
+
+    assertThat(config).isEmpty();
+  }
+
+  @Test
+  public void move_fast_ciphers_and_macs_first__but_keep_the_rest() {
+    Properties config = new Properties();
+
+    AlgorithmProfile.THROUGHPUT.apply(config);
+
+    assertThat(config.getProperty("cipher.c2s")).startsWith("aes128-ctr,aes192-ctr,aes256-ctr,");
+    assertThat(config.getProperty("mac.s2c")).startsWith("hmac-sha1,hmac-sha2-256,")
+      .contains("hmac-md5");
+    assertThat(config.getProperty("cipher.c2s").split(","))
+      .containsExactlyInAnyOrder(JSch.getConfig("cipher.c2s").split(","));
+    assertThat(config).doesNotContainKey("kex");
+  }
+
+  @Test
+  public void prefer_ecdh_without_group_exchange__for_low_latency() {
+    Properties config = new Properties();
+
+    AlgorithmProfile.LOW_LATENCY.apply(config);
+
+    assertThat(config.getProperty("kex")).startsWith("ecdh-sha2-nistp256,")
+      .doesNotContain("group-exchange")
+      .contains("diffie-hellman-group14-sha1");
+    assertThat(config.getProperty("CheckKexes")).isEqualTo("ecdh-sha2-nistp256");
+  }
+}
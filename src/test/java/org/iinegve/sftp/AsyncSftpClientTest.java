@@ -0,0 +1,114 @@
+package org.iinegve.sftp;
+
+import com.github.stefanbirkner.fakesftpserver.rule.FakeSftpServerRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.iinegve.sftp.SftpClient.sftpClient;
+
+public class AsyncSftpClientTest {
+
+  private static final int port = 2002;
+
+  @Rule
+  public final FakeSftpServerRule sftpServer = new FakeSftpServerRule()
+    .setPort(port)
+    .addUser("user", "");
+
+  private SftpClient sftp;
+
+  @Before
+  public void setUp() throws Exception {
+    sftp = sftpClient()
+      .host("localhost")
+      .port(port)
+      .username("user")
+      .privateKey(Files.readAllBytes(Paths.get(
+        AsyncSftpClientTest.class.getResource("/files/private-key").toURI())))
+      .build();
+    sftpServer.createDirectory("/async");
+  }
+
+  @After
+  public void tearDown() {
+    sftp.disconnect();
+  }
+
+  @Test
+  public void run_many_operations_with_bounded_concurrency() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    try (AsyncSftpClient async = new AsyncSftpClient(sftp)
+      .maxInFlight(3)
+      .executor(command -> new Thread(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          command.run();
+        } finally {
+          running.decrementAndGet();
+        }
+      }).start())) {
+
+      List<CompletableFuture<Void>> uploads = new ArrayList<>();
+      for (int i = 0; i < 30; i++) {
+        uploads.add(async.upload(ByteBuffer.wrap(("file " + i).getBytes(UTF_8)), "async/" + i));
+      }
+      CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+
+      assertThat(async.listDirectory("async").join()).hasSize(30);
+      assertThat(sftpServer.getFileContent("/async/17", UTF_8)).isEqualTo("file 17");
+      assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+    }
+  }
+
+  @Test
+  public void upload_and_download_batch__in_background() throws Exception {
+    File dir = Files.createTempDirectory("async").toFile();
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      File file = new File(dir, "file-" + i);
+      Files.writeString(file.toPath(), "file " + i);
+      files.add(file);
+    }
+    File downloads = new File(dir, "downloads");
+    downloads.mkdir();
+
+    try (AsyncSftpClient async = new AsyncSftpClient(sftp)) {
+      TransferReport uploaded = async.uploadAll(files, "async").join();
+      TransferReport downloaded =
+        async.downloadAll(List.of("async/file-1", "async/file-3"), downloads).join();
+
+      assertThat(uploaded.isSuccessful()).isTrue();
+      assertThat(uploaded.succeededCount()).isEqualTo(5);
+      assertThat(sftpServer.getFileContent("/async/file-4", UTF_8)).isEqualTo("file 4");
+      assertThat(downloaded.succeededCount()).isEqualTo(2);
+      assertThat(new File(downloads, "file-3")).hasContent("file 3");
+    }
+  }
+
+  @Test
+  public void complete_future_exceptionally__when_operation_fails() {
+    try (AsyncSftpClient async = new AsyncSftpClient(sftp)) {
+      CompletableFuture<Void> move = async.move("async/not-there", "async/elsewhere");
+
+      assertThatThrownBy(move::join)
+        .isInstanceOf(CompletionException.class)
+        .hasCauseInstanceOf(SftpClientException.class);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChecksumTest {
+
+  private static final byte[] CHECK = "123456789".getBytes(US_ASCII);
+
+  @Test
+  public void compute_standard_check_values() {
+    assertThat(hex(Checksum.CRC32C, CHECK)).isEqualTo("e3069283");
+    assertThat(hex(Checksum.MD5, CHECK)).isEqualTo("25f9e794323b453885f5181f1b624d0b");
+    assertThat(hex(Checksum.SHA256, CHECK))
+      .isEqualTo("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+  }
+
+  @Test
+  public void put_sidecar_next_to_the_file() {
+    assertThat(Checksum.SHA256.sidecar("dir/data.csv")).isEqualTo("dir/data.csv.sha256");
+    assertThat(Checksum.CRC32C.sidecar("data.csv")).isEqualTo("data.csv.crc32c");
+  }
+
+  private static String hex(Checksum checksum, byte[] bytes) {
+    Checksum.Hasher hasher = checksum.hasher();
+    hasher.update(bytes, 0, 4);
+    hasher.update(bytes, 4, bytes.length - 4);
+    return hasher.hex();
+  }
+}
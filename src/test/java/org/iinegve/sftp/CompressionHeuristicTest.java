@@ -0,0 +1,35 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressionHeuristicTest {
+
+  @Test
+  public void decide_by_extension__when_file_type_is_known() {
+    assertThat(CompressionHeuristic.byName("report.CSV")).contains(true);
+    assertThat(CompressionHeuristic.byName("data.json")).contains(true);
+    assertThat(CompressionHeuristic.byName("archive.zip")).contains(false);
+    assertThat(CompressionHeuristic.byName("table.parquet")).contains(false);
+    assertThat(CompressionHeuristic.byName("blob.bin")).isEqualTo(Optional.empty());
+    assertThat(CompressionHeuristic.byName("no-extension")).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void sample_ratio_tells_text_from_random_data() {
+    byte[] text = "id,name,amount\n1,first,100\n2,second,200\n".repeat(1000).getBytes(UTF_8);
+    byte[] random = new byte[64 * 1024];
+    new Random(7).nextBytes(random);
+
+    assertThat(CompressionHeuristic.ratio(text, text.length))
+      .isGreaterThan(CompressionHeuristic.MIN_RATIO);
+    assertThat(CompressionHeuristic.ratio(random, random.length))
+      .isLessThan(CompressionHeuristic.MIN_RATIO);
+    assertThat(CompressionHeuristic.ratio(random, 0)).isEqualTo(1);
+  }
+}
@@ -0,0 +1,122 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EndpointRouterTest {
+
+  private static final long MILLI = 1_000_000;
+
+  private final Endpoint first = Endpoint.of("first", 22);
+  private final Endpoint second = Endpoint.of("second", 22);
+  private final Map<Endpoint, Integer> sessions = new HashMap<>();
+  private long now;
+
+  @Test
+  public void try_endpoints_in_given_order__until_they_are_measured() {
+    EndpointRouter router = router(false);
+
+    assertThat(router.order()).containsExactly(first, second);
+
+    router.connected(first, 50 * MILLI);
+    assertThat(router.order()).containsExactly(second, first);
+  }
+
+  @Test
+  public void prefer_faster_endpoint() {
+    EndpointRouter router = router(false);
+    router.connected(first, 50 * MILLI);
+    router.connected(second, 20 * MILLI);
+    router.channelOpened(first, 10 * MILLI);
+    router.channelOpened(second, 10 * MILLI);
+
+    assertThat(router.order()).containsExactly(second, first);
+  }
+
+  @Test
+  public void penalize_endpoint_with_errors() {
+    EndpointRouter router = router(false);
+    router.connected(first, 20 * MILLI);
+    router.connected(second, 30 * MILLI);
+    router.operation(first, false);
+    router.operation(first, false);
+
+    assertThat(router.order()).containsExactly(second, first);
+    assertThat(router.stats().get(0).errorRate()).isGreaterThan(0.3);
+  }
+
+  @Test
+  public void cool_down_endpoint_that_failed_to_connect__and_try_it_last() {
+    EndpointRouter router = router(false);
+    router.connected(second, 50 * MILLI);
+    router.connectFailed(first);
+
+    assertThat(router.order()).containsExactly(second, first);
+    assertThat(router.stats().get(0).isAvailable()).isFalse();
+
+    now += Duration.ofSeconds(1).toNanos();
+    assertThat(router.stats().get(0).isAvailable()).isTrue();
+
+    router.connectFailed(first);
+    now += Duration.ofSeconds(1).toNanos();
+    assertThat(router.stats().get(0).isAvailable())
+      .describedAs("cooldown grows with consecutive failures")
+      .isFalse();
+  }
+
+  @Test
+  public void spread_sessions_over_endpoints__when_turned_on() {
+    EndpointRouter router = router(true);
+    router.connected(first, 20 * MILLI);
+    router.connected(second, 30 * MILLI);
+    assertThat(router.order()).containsExactly(first, second);
+
+    sessions.put(first, 1);
+    assertThat(router.order()).containsExactly(second, first);
+  }
+
+  @Test
+  public void spread_sessions_opened_at_the_same_time() throws Exception {
+    EndpointRouter router = router(true);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Endpoint>> reserved = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      reserved.add(executor.submit(() -> {
+        start.await();
+        return router.reserve(List.of());
+      }));
+    }
+    start.countDown();
+
+    Map<Endpoint, Integer> opening = new HashMap<>();
+    for (Future<Endpoint> endpoint : reserved) {
+      opening.merge(endpoint.get(), 1, Integer::sum);
+    }
+    executor.shutdown();
+    assertThat(opening).containsEntry(first, 4).containsEntry(second, 4);
+
+    for (int i = 0; i < 4; i++) {
+      router.release(first);
+    }
+    assertThat(router.reserve(List.of())).isEqualTo(first);
+    assertThat(router.reserve(List.of(first))).isEqualTo(second);
+    assertThat(router.reserve(List.of(first, second))).isNull();
+  }
+
+  private EndpointRouter router(boolean spread) {
+    return new EndpointRouter(List.of(first, second), spread,
+      endpoint -> sessions.getOrDefault(endpoint, 0), () -> now);
+  }
+}
@@ -0,0 +1,61 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FiltersTest {
+
+  @Test
+  public void glob_matches_any_characters_single_character_and_character_set() {
+    assertThat(Filters.glob("*.csv"))
+      .accepts("a.csv", ".csv", "report-2020.csv")
+      .rejects("a.csv.zip", "acsv");
+    assertThat(Filters.glob("file-?.txt"))
+      .accepts("file-1.txt")
+      .rejects("file-10.txt");
+    assertThat(Filters.glob("[ab]-*"))
+      .accepts("a-file", "b-file")
+      .rejects("c-file");
+  }
+
+  @Test
+  public void glob_matches_negated_character_set_and_range() {
+    assertThat(Filters.glob("[!abc]-*"))
+      .accepts("d-file", "!-file")
+      .rejects("a-file", "c-file");
+    assertThat(Filters.glob("file-[0-9]"))
+      .accepts("file-0", "file-7")
+      .rejects("file-a", "file--");
+    assertThat(Filters.glob("[]!]"))
+      .accepts("]", "!")
+      .rejects("a");
+  }
+
+  @Test
+  public void glob_treats_unterminated_bracket_literally() {
+    assertThat(Filters.glob("report[1.csv"))
+      .accepts("report[1.csv")
+      .rejects("report1.csv");
+    assertThat(Filters.glob("*["))
+      .accepts("a[", "[")
+      .rejects("a");
+  }
+
+  @Test
+  public void glob_treats_regex_syntax_inside_brackets_literally() {
+    assertThat(Filters.glob("[a&&b]"))
+      .accepts("a", "&", "b")
+      .rejects("c");
+    assertThat(Filters.glob("[\\^]"))
+      .accepts("\\", "^")
+      .rejects("a");
+  }
+
+  @Test
+  public void glob_treats_regex_characters_literally() {
+    assertThat(Filters.glob("a+b(1).$"))
+      .accepts("a+b(1).$")
+      .rejects("aab1.x");
+  }
+}
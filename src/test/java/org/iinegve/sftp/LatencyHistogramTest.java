@@ -0,0 +1,42 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void percentiles_are_within_relative_error() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1_000);
+    }
+
+    assertThat(histogram.count()).isEqualTo(10_000);
+    assertThat(histogram.maxNanos()).isEqualTo(10_000_000);
+    assertThat(histogram.meanNanos()).isCloseTo(5_000_500, within(1.0));
+    assertThat((double) histogram.percentileNanos(50)).isCloseTo(5_000_000, within(160_000.0));
+    assertThat((double) histogram.percentileNanos(99)).isCloseTo(9_900_000, within(310_000.0));
+    assertThat(histogram.percentileNanos(100)).isEqualTo(10_000_000);
+  }
+
+  @Test
+  public void small_values_are_exact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(7);
+
+    assertThat(histogram.percentileNanos(50)).isEqualTo(3);
+    assertThat(histogram.percentileNanos(100)).isEqualTo(7);
+  }
+
+  @Test
+  public void empty_histogram_gives_zeros() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertThat(histogram.percentileNanos(99)).isZero();
+    assertThat(histogram.meanNanos()).isZero();
+  }
+}
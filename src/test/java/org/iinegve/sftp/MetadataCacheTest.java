@@ -0,0 +1,156 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetadataCacheTest {
+
+  @Test
+  public void serve_from_cache__within_ttl() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.listing("/dir", loads::incrementAndGet);
+    Integer second = cache.listing("/dir", loads::incrementAndGet);
+
+    assertThat(second).isEqualTo(1);
+    assertThat(loads).hasValue(1);
+    assertThat(cache.stats().hits()).isEqualTo(1);
+    assertThat(cache.stats().misses()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_again__when_ttl_passed() throws Exception {
+    MetadataCache cache = new MetadataCache(Duration.ofMillis(1), 10);
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.listing("/dir", loads::incrementAndGet);
+    Thread.sleep(10);
+    cache.listing("/dir", loads::incrementAndGet);
+
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  public void evict_least_recently_used__above_max_entries() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 2);
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.listing("/a", loads::incrementAndGet);
+    cache.listing("/b", loads::incrementAndGet);
+    cache.listing("/a", loads::incrementAndGet);
+    cache.listing("/c", loads::incrementAndGet);
+    cache.listing("/a", loads::incrementAndGet);
+    cache.listing("/b", loads::incrementAndGet);
+
+    assertThat(loads).hasValue(4);
+    assertThat(cache.stats().evictions()).isEqualTo(2);
+    assertThat(cache.stats().size()).isEqualTo(2);
+  }
+
+  @Test
+  public void share_single_load__between_concurrent_misses() throws Exception {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    Future<Integer> first = executor.submit(() -> cache.listing("/dir", () -> {
+      loading.countDown();
+      await(release);
+      return loads.incrementAndGet();
+    }));
+    loading.await();
+    Future<Integer> second = executor.submit(() -> cache.listing("/dir", loads::incrementAndGet));
+    Thread.sleep(50);
+    release.countDown();
+
+    assertThat(first.get()).isEqualTo(1);
+    assertThat(second.get()).isEqualTo(1);
+    assertThat(loads).hasValue(1);
+    assertThat(cache.stats().coalesced()).isEqualTo(1);
+    executor.shutdown();
+  }
+
+  @Test
+  public void invalidate_path_its_parent_listing_and_everything_underneath() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+    cache.listing("/dir", () -> "dir");
+    cache.listing("/dir/sub", () -> "sub");
+    cache.listing("/dir/sub/deeper", () -> "deeper");
+    cache.listing("/other", () -> "other");
+
+    cache.invalidate("/dir/sub");
+
+    assertThat((String) cache.listingIfPresent("/dir")).isNull();
+    assertThat((String) cache.listingIfPresent("/dir/sub")).isNull();
+    assertThat((String) cache.listingIfPresent("/dir/sub/deeper")).isNull();
+    assertThat((String) cache.listingIfPresent("/other")).isEqualTo("other");
+  }
+
+  @Test
+  public void invalidate_leaves_siblings_and_attributes_of_parent() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+    cache.stat("/dir", () -> "dir");
+    cache.listing("/dir", () -> "dir listing");
+    cache.stat("/dir/sub-file", () -> "sibling");
+    cache.stat("/dir/sub/file", () -> "file");
+
+    cache.invalidate("/dir/sub");
+
+    assertThat((String) cache.statIfPresent("/dir")).isEqualTo("dir");
+    assertThat((String) cache.listingIfPresent("/dir")).isNull();
+    assertThat((String) cache.statIfPresent("/dir/sub-file")).isEqualTo("sibling");
+    assertThat((String) cache.statIfPresent("/dir/sub/file")).isNull();
+    assertThat(cache.stats().size()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidate_everything__under_root() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+    cache.listing("/", () -> "root");
+    cache.stat("/dir/file", () -> "file");
+
+    cache.invalidate("/");
+
+    assertThat(cache.stats().size()).isZero();
+  }
+
+  @Test
+  public void do_not_store_load__that_raced_with_invalidation() {
+    MetadataCache cache = new MetadataCache(Duration.ofMinutes(1), 10);
+
+    cache.listing("/dir", () -> {
+      cache.invalidate("/dir/file");
+      return "stale";
+    });
+
+    assertThat((String) cache.listingIfPresent("/dir")).isNull();
+  }
+
+  @Test
+  public void normalize_path_against_home() {
+    assertThat(MetadataCache.normalize("/home/user", "dir")).isEqualTo("/home/user/dir");
+    assertThat(MetadataCache.normalize("/home/user", "./dir//sub/")).isEqualTo("/home/user/dir/sub");
+    assertThat(MetadataCache.normalize("/home/user", "../other")).isEqualTo("/home/other");
+    assertThat(MetadataCache.normalize("/home/user", "/abs/../path")).isEqualTo("/path");
+    assertThat(MetadataCache.normalize("/", ".")).isEqualTo("/");
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
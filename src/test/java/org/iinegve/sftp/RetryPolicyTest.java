@@ -0,0 +1,82 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+  private final RetryPolicy policy = RetryPolicy.retryPolicy()
+    .maxAttempts(5)
+    .initialBackoff(Duration.ofMillis(100))
+    .maxBackoff(Duration.ofMillis(300))
+    .jitter(0)
+    .maxElapsed(Duration.ofSeconds(1))
+    .build();
+
+  @Test
+  public void backoff_grows_exponentially_up_to_max() {
+    Exception failure = new SftpException(ChannelSftp.SSH_FX_FAILURE, "failure");
+
+    assertThat(policy.backoff(1, failure, 0)).isEqualTo(Duration.ofMillis(100));
+    assertThat(policy.backoff(2, failure, 0)).isEqualTo(Duration.ofMillis(200));
+    assertThat(policy.backoff(3, failure, 0)).isEqualTo(Duration.ofMillis(300));
+    assertThat(policy.backoff(5, failure, 0)).isNull();
+  }
+
+  @Test
+  public void jitter_shortens_backoff() {
+    RetryPolicy jittered = RetryPolicy.retryPolicy()
+      .initialBackoff(Duration.ofMillis(100))
+      .jitter(0.5)
+      .build();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(jittered.backoff(1, new IOException(), 0))
+        .isBetween(Duration.ofMillis(50), Duration.ofMillis(100));
+    }
+  }
+
+  @Test
+  public void do_not_retry_past_max_elapsed() {
+    assertThat(policy.backoff(1, new IOException(), Duration.ofMillis(950).toNanos())).isNull();
+  }
+
+  @Test
+  public void do_not_retry_errors_that_do_not_go_away() {
+    SftpException missing = new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "no such file");
+    SftpException denied =
+      new SftpException(ChannelSftp.SSH_FX_PERMISSION_DENIED, "permission denied");
+
+    assertThat(policy.backoff(1, missing, 0)).isNull();
+    assertThat(policy.backoff(1, new SftpClientException(denied), 0)).isNull();
+    assertThat(policy.isRetryable(new SftpException(ChannelSftp.SSH_FX_EOF, "eof"))).isTrue();
+    assertThat(RetryPolicy.retryPolicy().nonRetryable(IOException.class).build()
+      .isRetryable(new SftpClientException(new IOException()))).isFalse();
+  }
+
+  @Test
+  public void tell_transport_failures_from_sftp_errors() {
+    assertThat(RetryPolicy.isTransportFailure(
+      new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "no such file"))).isFalse();
+    assertThat(RetryPolicy.isTransportFailure(
+      new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "connection lost"))).isTrue();
+    assertThat(RetryPolicy.isTransportFailure(new SftpClientException(new IOException())))
+      .isTrue();
+    assertThat(RetryPolicy.isTransportFailure(new IllegalArgumentException())).isFalse();
+    assertThat(RetryPolicy.isTransportFailure(new NullPointerException())).isFalse();
+  }
+
+  @Test
+  public void do_not_retry_programming_errors() {
+    assertThat(policy.backoff(1, new IllegalArgumentException(), 0)).isNull();
+    assertThat(policy.backoff(1, new SftpClientException(new NullPointerException()), 0))
+      .isNull();
+    assertThat(policy.isRetryable(new SftpClientException(new IOException()))).isTrue();
+  }
+}
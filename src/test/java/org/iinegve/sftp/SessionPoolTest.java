@@ -0,0 +1,283 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.DummyChannelSftp;
+import com.jcraft.jsch.DummySession;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import org.iinegve.sftp.SessionPool.ChannelLease;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SessionPoolTest {
+
+  private final List<AtomicBoolean> created = new ArrayList<>();
+  private final AtomicInteger keepAlives = new AtomicInteger();
+  private final AtomicBoolean failKeepAlive = new AtomicBoolean();
+  private final AtomicInteger refuseChannels = new AtomicInteger();
+  private final AtomicBoolean failRoundTrip = new AtomicBoolean();
+  private final AtomicBoolean hangRoundTrip = new AtomicBoolean();
+
+  @Test
+  public void share_single_session__while_it_has_free_channels() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().maxChannelsPerSession(3));
+
+    ChannelLease first = pool.borrow();
+    ChannelLease second = pool.borrow();
+    ChannelLease third = pool.borrow();
+
+    assertThat(created).hasSize(1);
+    assertThat(pool.leased()).isEqualTo(3);
+
+    first.close();
+    second.close();
+    third.close();
+    assertThat(pool.leased()).isZero();
+  }
+
+  @Test
+  public void open_another_session__when_all_channels_of_existing_are_in_use() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().maxChannelsPerSession(2).maxSessions(3));
+
+    for (int i = 0; i < 5; i++) {
+      pool.borrow();
+    }
+
+    assertThat(created).hasSize(3);
+  }
+
+  @Test
+  public void borrow_throws__when_no_channel_given_back_within_timeout() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder()
+      .maxChannelsPerSession(1)
+      .maxSessions(1)
+      .borrowTimeout(Duration.ofMillis(50)));
+
+    pool.borrow();
+
+    assertThatThrownBy(pool::borrow).isExactlyInstanceOf(SftpClientException.class);
+  }
+
+  @Test
+  public void keep_connected_session__when_server_refuses_channel_on_it() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().maxChannelsPerSession(2).maxSessions(2));
+    ChannelLease first = pool.borrow();
+
+    refuseChannels.set(1);
+    ChannelLease second = pool.borrow();
+
+    assertThat(created).hasSize(2);
+    assertThat(created.get(0)).isTrue();
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(pool.leased()).isEqualTo(2);
+    first.close();
+    second.close();
+    assertThat(pool.leased()).isZero();
+  }
+
+  @Test
+  public void replace_session__when_it_is_not_connected_anymore() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().maxSessions(1).validateOnBorrow(false));
+    pool.borrow().close();
+
+    created.get(0).set(false);
+    refuseChannels.set(1);
+    pool.borrow();
+
+    assertThat(created).hasSize(2);
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void borrow_waits__until_channel_given_back() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().maxChannelsPerSession(1).maxSessions(1));
+    ChannelLease lease = pool.borrow();
+
+    Thread releasing = new Thread(() -> {
+      sleep(100);
+      lease.close();
+    });
+    releasing.start();
+
+    assertThat(pool.borrow()).isNotNull();
+    assertThat(created).hasSize(1);
+  }
+
+  @Test
+  public void drop_disconnected_session__on_borrow() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder());
+    pool.borrow().close();
+
+    created.get(0).set(false);
+    pool.borrow().close();
+
+    assertThat(created).hasSize(2);
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void close_idle_sessions_above_minimum() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder()
+      .maxChannelsPerSession(1)
+      .minSessions(1)
+      .sessionIdleTimeout(Duration.ofMillis(10)));
+    ChannelLease first = pool.borrow();
+    ChannelLease second = pool.borrow();
+    assertThat(pool.size()).isEqualTo(2);
+
+    first.close();
+    second.close();
+    sleep(50);
+    pool.borrow().close();
+
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void start_opens_minimum_sessions() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().minSessions(3));
+
+    pool.start();
+
+    assertThat(created).hasSize(3);
+    assertThat(pool.isConnected()).isTrue();
+
+    pool.close();
+    assertThat(pool.isConnected()).isFalse();
+  }
+
+  @Test
+  public void replace_session__that_failed_keepalive() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().minSessions(1));
+    pool.start();
+    assertThat(keepAlives).hasValue(0);
+
+    pool.maintain();
+    assertThat(keepAlives).hasValue(1);
+    assertThat(created).hasSize(1);
+
+    failKeepAlive.set(true);
+    pool.maintain();
+
+    assertThat(created).hasSize(2);
+    assertThat(created.get(0)).isFalse();
+    assertThat(pool.size()).isEqualTo(1);
+    assertThat(pool.isConnected()).isTrue();
+  }
+
+  @Test
+  public void replace_session__that_accepted_keepalive_but_failed_round_trip() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().minSessions(1));
+    pool.start();
+
+    failRoundTrip.set(true);
+    pool.maintain();
+
+    assertThat(keepAlives).hasValue(1);
+    assertThat(created).hasSize(2);
+    assertThat(created.get(0)).isFalse();
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test(timeout = 5_000)
+  public void replace_session__that_accepted_keepalive_but_hangs_on_round_trip() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder()
+      .minSessions(1)
+      .borrowTimeout(Duration.ofMillis(100)));
+    pool.start();
+
+    hangRoundTrip.set(true);
+    pool.maintain();
+
+    assertThat(keepAlives).hasValue(1);
+    assertThat(created).hasSize(2);
+    assertThat(created.get(0)).isFalse();
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void keep_alive_in_background() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().keepAliveInterval(Duration.ofMillis(10)));
+    pool.start();
+
+    sleep(200);
+    assertThat(keepAlives.get()).isGreaterThan(1);
+
+    pool.close();
+    int afterClose = keepAlives.get();
+    sleep(100);
+    assertThat(keepAlives).hasValue(afterClose);
+  }
+
+  @Test
+  public void keep_alive_in_background__from_first_borrow() throws Exception {
+    SessionPool pool = pool(new SftpClientBuilder().keepAliveInterval(Duration.ofMillis(10)));
+    pool.borrow().close();
+
+    sleep(200);
+    assertThat(keepAlives.get()).isGreaterThan(1);
+    pool.close();
+  }
+
+  private SessionPool pool(SftpClientBuilder settings) {
+    return new SessionPool(this::newSession, settings);
+  }
+
+  private Session newSession() throws JSchException {
+    AtomicBoolean connected = new AtomicBoolean(true);
+    created.add(connected);
+    return new DummySession() {
+      @Override public boolean isConnected() { return connected.get(); }
+      @Override public void disconnect() { connected.set(false); }
+
+      @Override
+      public void sendKeepAliveMsg() throws Exception {
+        if (failKeepAlive.getAndSet(false)) {
+          throw new JSchException("session is down");
+        }
+        keepAlives.incrementAndGet();
+      }
+
+      @Override
+      public Channel openChannel(String type) {
+        return new DummyChannelSftp() {
+          @Override
+          public void connect() throws JSchException {
+            if (refuseChannels.getAndDecrement() > 0) {
+              throw new JSchException("channel is not opened");
+            }
+          }
+
+          @Override
+          public String realpath(String path) throws SftpException {
+            if (hangRoundTrip.getAndSet(false)) {
+              SessionPoolTest.sleep(10_000);
+            }
+            if (failRoundTrip.getAndSet(false)) {
+              throw new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "no reply");
+            }
+            return path;
+          }
+        };
+      }
+    };
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -1,30 +1,52 @@
 package org.iinegve.sftp;
 
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import com.github.stefanbirkner.fakesftpserver.rule.FakeSftpServerRule;
 import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.CustomJSch;
 import com.jcraft.jsch.DummyChannelExec;
 import com.jcraft.jsch.DummyChannelSftp;
 import com.jcraft.jsch.DummySession;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
 import com.jcraft.jsch.ThrowingInputStream;
 import lombok.SneakyThrows;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
@@ -136,6 +158,41 @@ public class SftpClientTest {
       .isExactlyInstanceOf(IllegalArgumentException.class);
   }
 
+  @Test
+  public void upload_all_files_in_parallel() throws Exception {
+    SftpClient sftp = workingSftpClient();
+    List<File> files = list(
+      new File(uri("files/a-file")), new File(uri("files/b-file")), new File(uri("files/c-file")));
+
+    TransferReport report = sftp.uploadAll(files, "subdir", 3);
+
+    assertThat(report.isSuccessful()).isTrue();
+    assertThat(report.results()).extracting(TransferResult::destination)
+      .containsExactly("subdir/a-file", "subdir/b-file", "subdir/c-file");
+    assertThat(report.totalBytes()).isEqualTo(3 * "Just a-file to test upload".length());
+    assertThat(sftp.listDirectory("subdir")).containsOnly("a-file", "b-file", "c-file");
+  }
+
+  @Test
+  public void download_all_files_in_parallel__reporting_failed_ones() throws IOException {
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+    SftpClient sftp = workingSftpClient();
+
+    TransferReport report = sftp.downloadAll(list(
+      "list-files/sublist-files/first-file",
+      "list-files/sublist-files/missing-file",
+      "list-files/sublist-files/second-file"), tempDir);
+
+    assertThat(report.succeededCount()).isEqualTo(2);
+    assertThat(report.failed()).extracting(TransferResult::source)
+      .containsOnly("list-files/sublist-files/missing-file");
+    assertThat(report.totalBytes()).isEqualTo(
+      "first file content".length() + "second file content".length());
+    assertThat(content(new File(tempDir, "first-file"))).isEqualTo("first file content");
+    assertThat(content(new File(tempDir, "second-file"))).isEqualTo("second file content");
+  }
+
   @Test
   public void list_directory() {
     SftpClient sftp = workingSftpClient();
@@ -146,6 +203,138 @@ public class SftpClientTest {
     assertThat(fileNames).containsOnly("first-file", "second-file");
   }
 
+  @Test
+  public void list_directory_with_filter_and_limit() throws IOException {
+    sftpServer.createDirectory("/many-files");
+    for (int i = 0; i < 50; i++) {
+      sftpServer.putFile("/many-files/file-" + i + ".csv", "csv", UTF_8);
+      sftpServer.putFile("/many-files/file-" + i + ".zip", "zip", UTF_8);
+    }
+    SftpClient sftp = workingSftpClient();
+
+    assertThat(sftp.listDirectory("many-files", Filters.glob("*.csv"), Integer.MAX_VALUE))
+      .hasSize(50)
+      .allMatch(fn -> fn.endsWith(".csv"));
+    assertThat(sftp.listDirectory("many-files", Filters.glob("file-1?.zip"), 3))
+      .hasSize(3)
+      .allMatch(fn -> fn.matches("file-1\\d\\.zip"));
+  }
+
+  @Test
+  public void stream_directory__stopping_early() throws IOException {
+    sftpServer.createDirectory("/many-files");
+    for (int i = 0; i < 200; i++) {
+      sftpServer.putFile("/many-files/file-" + i, "content", UTF_8);
+    }
+    SftpClient sftp = workingSftpClient();
+
+    try (Stream<String> names = sftp.streamDirectory("many-files", fn -> fn.endsWith("7"))) {
+      assertThat(names.limit(5).collect(toList())).hasSize(5).allMatch(fn -> fn.endsWith("7"));
+    }
+    try (Stream<String> names = sftp.streamDirectory("many-files", fn -> true)) {
+      assertThat(names.count()).isEqualTo(200);
+    }
+  }
+
+  @Test
+  public void stream_directory_throws__when_directory_missing() {
+    SftpClient sftp = workingSftpClient();
+
+    try (Stream<String> names = sftp.streamDirectory("missing-dir", fn -> true)) {
+      assertThatThrownBy(names::count).isExactlyInstanceOf(SftpClientException.class);
+    }
+  }
+
+  @Test
+  public void list_files_with_attributes() {
+    SftpClient sftp = workingSftpClient();
+
+    List<RemoteFile> files = sftp.listFiles("list-files");
+
+    assertThat(files).hasSize(1);
+    RemoteFile dir = files.get(0);
+    assertThat(dir.path()).isEqualTo("list-files/sublist-files");
+    assertThat(dir.isDirectory()).isTrue();
+
+    RemoteFile file = sftp.listFiles("list-files/sublist-files/", Filters.name(Filters.glob("f*")),
+      Integer.MAX_VALUE).get(0);
+    assertThat(file.path()).isEqualTo("list-files/sublist-files/first-file");
+    assertThat(file.name()).isEqualTo("first-file");
+    assertThat(file.size()).isEqualTo("first file content".length());
+    assertThat(file.isRegularFile()).isTrue();
+    assertThat(file.modifiedAt()).isBetween(Instant.now().minusSeconds(60), Instant.now());
+  }
+
+  @Test
+  public void stream_files_filtered_by_attributes() throws IOException {
+    sftpServer.putFile("/list-files/sublist-files/empty-file", "", UTF_8);
+    SftpClient sftp = workingSftpClient();
+
+    try (Stream<RemoteFile> files = sftp.streamFiles("list-files/sublist-files",
+      Filters.nonEmpty().and(Filters.modifiedAfter(Instant.EPOCH)))) {
+      assertThat(files.map(RemoteFile::name)).containsOnly("first-file", "second-file");
+    }
+    assertThat(sftp.listFiles("list-files/sublist-files", Filters.largerThan(18), 10))
+      .extracting(RemoteFile::name)
+      .containsOnly("second-file");
+  }
+
+  @Test
+  public void serve_listing_from_cache__until_changed_through_client() throws Exception {
+    SftpClient sftp = sftpClientBuilder().metadataCache(Duration.ofMinutes(1), 100).build();
+
+    assertThat(sftp.listDirectory("subdir")).isEmpty();
+    sftpServer.putFile("/subdir/not-seen-through-cache", "content", UTF_8);
+    assertThat(sftp.listDirectory("/subdir/")).isEmpty();
+    assertThat(sftp.cacheStats().hits()).isEqualTo(1);
+
+    sftp.upload(new File(uri("files/a-file")), "subdir");
+    assertThat(sftp.listDirectory("subdir")).containsOnly("a-file", "not-seen-through-cache");
+
+    sftp.move("subdir/a-file", "to-move/a-file");
+    assertThat(sftp.listFiles("subdir")).extracting(RemoteFile::path)
+      .containsOnly("subdir/not-seen-through-cache");
+
+    sftp.delete("subdir/not-seen-through-cache");
+    assertThat(sftp.listDirectory("subdir")).isEmpty();
+  }
+
+  @Test
+  public void walk_directory_tree() throws IOException {
+    sftpServer.createDirectory("/tree");
+    for (int i = 0; i < 3; i++) {
+      sftpServer.createDirectory("/tree/dir-" + i);
+      sftpServer.putFile("/tree/dir-" + i + "/file", "content", UTF_8);
+      for (int j = 0; j < 3; j++) {
+        sftpServer.putFile("/tree/dir-" + i + "/sub-" + j + "/file", "content", UTF_8);
+      }
+    }
+    SftpClient sftp = workingSftpClient();
+
+    try (Stream<RemoteFile> files = sftp.walk("tree", Integer.MAX_VALUE, Filters.regularFiles())) {
+      assertThat(files.map(RemoteFile::path))
+        .hasSize(12)
+        .contains("tree/dir-0/file", "tree/dir-2/sub-1/file");
+    }
+    try (Stream<RemoteFile> files = sftp.walk("tree", 2, file -> true)) {
+      assertThat(files.map(RemoteFile::path))
+        .hasSize(15)
+        .doesNotContain("tree/dir-0/sub-0/file");
+    }
+    try (Stream<RemoteFile> files = sftp.walk("tree", Integer.MAX_VALUE, Filters.regularFiles(),
+      dir -> dir.name().startsWith("sub"))) {
+      assertThat(files.map(RemoteFile::path))
+        .containsOnly("tree/dir-0/file", "tree/dir-1/file", "tree/dir-2/file");
+    }
+  }
+
+  @Test
+  public void walk_throws__when_root_missing() {
+    try (Stream<RemoteFile> files = workingSftpClient().walk("missing", 3, file -> true)) {
+      assertThatThrownBy(files::count).isExactlyInstanceOf(SftpClientException.class);
+    }
+  }
+
   @Test
   public void list_directory_throws__when_directory_null_or_empty() {
     assertThatThrownBy(() -> workingSftpClient().listDirectory(""))
@@ -189,6 +378,182 @@ public class SftpClientTest {
     assertThat(content(firstFile)).isEqualTo("first file content");
   }
 
+  @Test
+  public void download_remote_file_in_segments() throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append("line ").append(i).append('\n');
+    }
+    sftpServer.putFile("/large-file", content.toString(), UTF_8);
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+
+    File file = workingSftpClient().downloadSegmented("/large-file", tempDir, 1000, 3);
+
+    assertThat(file).isEqualTo(new File(tempDir, "large-file"));
+    assertThat(content(file)).isEqualTo(content.toString());
+  }
+
+  @Test
+  public void download_in_segments_leaves_no_file__when_segment_fails() throws IOException {
+    CustomJSch jsch = new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return true; }
+
+          @Override
+          public Channel openChannel(String type) {
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return true; }
+              @Override public SftpATTRS stat(String path) { return attrs(3000); }
+
+              @Override
+              public InputStream get(String src, SftpProgressMonitor monitor, long skip) {
+                return skip == 1000 ? new ThrowingInputStream()
+                  : new ByteArrayInputStream(new byte[1000]);
+              }
+            };
+          }
+        };
+      }
+    };
+    SftpClient sftp = sftpClientBuilder()
+      .port(2007)
+      .jsch(jsch)
+      .build();
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+
+    assertThatThrownBy(() -> sftp.downloadSegmented("large-file", tempDir, 1000, 3))
+      .isExactlyInstanceOf(SftpClientException.class)
+      .hasCauseExactlyInstanceOf(IOException.class);
+    assertThat(tempDir.list()).isEmpty();
+  }
+
+  @Test
+  public void download_remote_file_in_one_go__when_smaller_than_segment() throws IOException {
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+
+    File file = workingSftpClient()
+      .downloadSegmented("/file-in-root", new File(tempDir, "local-file"), 1000, 3);
+
+    assertThat(content(file)).isEqualTo("File in sftp root");
+  }
+
+  @Test
+  public void download_resumable__continues_from_checkpoint() throws IOException {
+    SftpClient sftp = workingSftpClient();
+    RemoteFile remote = sftp.listFiles("/").stream()
+      .filter(f -> f.name().equals("file-in-root")).findFirst().get();
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+    File local = new File(tempDir, "file-in-root");
+    // partial content differs from remote, so it's seen whether it was kept
+    Files.write(Paths.get(local.getPath() + ".part"), "XXXXXXX".getBytes(UTF_8));
+    new Checkpoint("/file-in-root", remote.size(), remote.modifiedAt().getEpochSecond(), 4)
+      .save(new File(local.getPath() + ".part.checkpoint"));
+
+    File file = sftp.downloadResumable("/file-in-root", tempDir);
+
+    assertThat(content(file)).isEqualTo("XXXX in sftp root");
+    assertThat(tempDir.list()).containsOnly("file-in-root");
+  }
+
+  @Test
+  public void download_resumable__starts_over_when_remote_file_changed() throws IOException {
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+    File local = new File(tempDir, "file-in-root");
+    Files.write(Paths.get(local.getPath() + ".part"), "XXXXXXX".getBytes(UTF_8));
+    new Checkpoint("/file-in-root", 17, 1, 4).save(new File(local.getPath() + ".part.checkpoint"));
+
+    File file = workingSftpClient().downloadResumable("/file-in-root", tempDir);
+
+    assertThat(content(file)).isEqualTo("File in sftp root");
+  }
+
+  @Test
+  public void upload_resumable__continues_remote_partial_file() throws Exception {
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+    File local = new File(tempDir, "resumed");
+    Files.write(local.toPath(), "local content".getBytes(UTF_8));
+    new Checkpoint("subdir/resumed", local.length(), local.lastModified(), 0)
+      .save(new File(local.getPath() + ".upload.checkpoint"));
+    sftpServer.putFile("/subdir/resumed.part", "XXXXX", UTF_8);
+
+    SftpClient sftp = workingSftpClient();
+    sftp.uploadResumable(local, "subdir");
+
+    assertThat(sftpServer.getFileContent("/subdir/resumed", UTF_8)).isEqualTo("XXXXX content");
+    assertThat(sftpServer.existsFile("/subdir/resumed.part")).isFalse();
+    assertThat(tempDir.list()).containsOnly("resumed");
+  }
+
+  @Test
+  public void upload_resumable__replaces_existing_file() throws Exception {
+    File tempDir = Files.createTempDirectory("sftp-client").toFile();
+    tempDir.deleteOnExit();
+    File local = new File(tempDir, "replaced");
+    Files.write(local.toPath(), "new content".getBytes(UTF_8));
+    sftpServer.putFile("/subdir/replaced", "old content", UTF_8);
+    sftpServer.putFile("/subdir/replaced.part", "stale", UTF_8);
+
+    workingSftpClient().uploadResumable(local, "subdir");
+
+    assertThat(sftpServer.getFileContent("/subdir/replaced", UTF_8)).isEqualTo("new content");
+  }
+
+  @Test
+  public void upload_from_stream_channel_and_buffer() throws Exception {
+    SftpClient sftp = workingSftpClient();
+
+    sftp.upload(new ByteArrayInputStream("from stream".getBytes(UTF_8)), "subdir/stream");
+    sftp.upload(Channels.newChannel(new ByteArrayInputStream("from channel".getBytes(UTF_8))),
+      "subdir/channel");
+    ByteBuffer buffer = ByteBuffer.wrap("from buffer".getBytes(UTF_8));
+    sftp.upload(buffer, "subdir/buffer");
+
+    assertThat(sftpServer.getFileContent("/subdir/stream", UTF_8)).isEqualTo("from stream");
+    assertThat(sftpServer.getFileContent("/subdir/channel", UTF_8)).isEqualTo("from channel");
+    assertThat(sftpServer.getFileContent("/subdir/buffer", UTF_8)).isEqualTo("from buffer");
+    assertThat(buffer.remaining()).isEqualTo("from buffer".length());
+  }
+
+  @Test
+  public void download_remote_file_into_stream_and_channel() {
+    SftpClient sftp = workingSftpClient();
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+
+    long streamed = sftp.download("/file-in-root", stream);
+    sftp.download("list-files/sublist-files/first-file", Channels.newChannel(channel));
+
+    assertThat(streamed).isEqualTo("File in sftp root".length());
+    assertThat(stream.toString(UTF_8)).isEqualTo("File in sftp root");
+    assertThat(channel.toString(UTF_8)).isEqualTo("first file content");
+  }
+
+  @Test
+  public void open_remote_file_for_reading() throws IOException {
+    SftpClient sftp = workingSftpClient();
+
+    try (InputStream in = sftp.openRead("/file-in-root")) {
+      assertThat(new String(in.readAllBytes(), UTF_8)).isEqualTo("File in sftp root");
+    }
+    try (InputStream in = sftp.openRead("list-files/sublist-files/second-file")) {
+      assertThat(new String(in.readAllBytes(), UTF_8)).isEqualTo("second file content");
+    }
+  }
+
+  @Test
+  public void open_remote_file_for_reading_throws__when_file_missing() {
+    assertThatThrownBy(() -> workingSftpClient().openRead("/missing-file"))
+      .isExactlyInstanceOf(SftpClientException.class);
+  }
+
   @Test
   public void move_files_to_another_directory() {
     SftpClient sftp = workingSftpClient();
@@ -203,6 +568,18 @@ public class SftpClientTest {
     assertThat(sftp.listDirectory("to-move")).containsOnly("file-in-to-move");
   }
 
+  @Test
+  public void create_remote_directories_with_missing_parents() {
+    SftpClient sftp = workingSftpClient();
+
+    sftp.createDirectories("subdir/new/deeper");
+    sftp.createDirectories("subdir/new/deeper");
+
+    assertThat(sftpServer.existsFile("/subdir/new/deeper")).isFalse();
+    assertThat(sftp.listFiles("subdir/new")).extracting(RemoteFile::path)
+      .containsOnly("subdir/new/deeper");
+  }
+
   @Test
   public void delete_files() {
     SftpClient sftp = workingSftpClient();
@@ -232,6 +609,142 @@ public class SftpClientTest {
     assertThat(after).isEmpty();
   }
 
+  @Test
+  public void delete_all__reports_outcome_of_every_file() throws IOException {
+    sftpServer.createDirectory("/delete-all");
+    List<String> files = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      sftpServer.putFile("/delete-all/file-" + i, "content", UTF_8);
+      files.add("delete-all/file-" + i);
+    }
+    files.add("delete-all/not-there");
+    SftpClient sftp = workingSftpClient();
+
+    BatchReport report = sftp.deleteAll(files, 4);
+
+    assertThat(report.isSuccessful()).isTrue();
+    assertThat(report.results()).extracting(PathResult::path).containsExactlyElementsOf(files);
+    assertThat(report.done()).hasSize(50);
+    assertThat(report.missing()).extracting(PathResult::path)
+      .containsOnly("delete-all/not-there");
+    assertThat(sftp.listDirectory("/delete-all")).isEmpty();
+  }
+
+  @Test(timeout = 10_000)
+  public void delete_all__gives_up__when_server_goes_away_in_the_middle() {
+    AtomicBoolean down = new AtomicBoolean();
+    AtomicInteger deleted = new AtomicInteger();
+    CustomJSch jsch = new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return !down.get(); }
+
+          @Override
+          public Channel openChannel(String type) throws JSchException {
+            if (down.get()) {
+              throw new JSchException("Connection refused");
+            }
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return !down.get(); }
+
+              @Override
+              public void rm(String path) throws SftpException {
+                if (down.get() || deleted.incrementAndGet() > 3) {
+                  down.set(true);
+                  throw new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "Connection lost");
+                }
+              }
+            };
+          }
+        };
+      }
+    };
+    SftpClient sftp = sftpClientBuilder()
+      .port(2007)
+      .jsch(jsch)
+      .retryPolicy(RetryPolicy.retryPolicy().maxAttempts(3).initialBackoff(Duration.ZERO).build())
+      .build();
+    List<String> files = Stream.iterate(1, i -> i + 1).limit(20)
+      .map(i -> "file-" + i).collect(toList());
+
+    BatchReport report = sftp.deleteAll(files, 2);
+
+    assertThat(report.done()).hasSize(3);
+    assertThat(report.failed()).hasSize(17);
+    assertThat(report.failed()).allSatisfy(result -> assertThat(result.error()).isPresent());
+  }
+
+  @Test
+  public void retry_operation__when_channel_cannot_be_opened_for_a_moment() {
+    AtomicInteger refused = new AtomicInteger();
+    CustomJSch jsch = new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return true; }
+
+          @Override
+          public Channel openChannel(String type) throws JSchException {
+            if (refused.getAndIncrement() == 0) {
+              throw new JSchException("Connection refused");
+            }
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return true; }
+              @Override public void rm(String path) { }
+            };
+          }
+        };
+      }
+    };
+    SftpClient sftp = sftpClientBuilder()
+      .port(2007)
+      .jsch(jsch)
+      .retryPolicy(RetryPolicy.retryPolicy().maxAttempts(2).initialBackoff(Duration.ZERO).build())
+      .build();
+
+    sftp.delete("file");
+
+    assertThat(refused.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void move_all__creates_target_directories_and_reports_every_file() throws IOException {
+    sftpServer.putFile("/to-move/first", "first", UTF_8);
+    sftpServer.putFile("/to-move/second", "second", UTF_8);
+    Map<String, String> moves = new LinkedHashMap<>();
+    moves.put("to-move/first", "archive/2020-01-01/first");
+    moves.put("to-move/not-there", "archive/2020-01-01/not-there");
+    moves.put("to-move/second", "archive/2020-01-02/second");
+
+    BatchReport report = workingSftpClient().moveAll(moves, 2);
+
+    assertThat(report.results()).extracting(PathResult::path)
+      .containsExactly("to-move/first", "to-move/not-there", "to-move/second");
+    assertThat(report.results()).extracting(PathResult::outcome).containsExactly(
+      PathResult.Outcome.DONE, PathResult.Outcome.MISSING, PathResult.Outcome.DONE);
+    assertThat(sftpServer.getFileContent("/archive/2020-01-01/first", UTF_8)).isEqualTo("first");
+    assertThat(sftpServer.getFileContent("/archive/2020-01-02/second", UTF_8))
+      .isEqualTo("second");
+  }
+
+  @Test
+  public void move_directory_contents__moves_matching_files_only() throws IOException {
+    sftpServer.putFile("/to-move/a.csv", "a", UTF_8);
+    sftpServer.putFile("/to-move/b.csv", "b", UTF_8);
+    sftpServer.putFile("/to-move/c.txt", "c", UTF_8);
+    sftpServer.createDirectory("/to-move/nested");
+    SftpClient sftp = workingSftpClient();
+
+    BatchReport report = sftp.moveDirectoryContents("to-move", "processed",
+      Filters.name(Filters.glob("*.csv")));
+
+    assertThat(report.isSuccessful()).isTrue();
+    assertThat(report.done()).hasSize(2);
+    assertThat(sftp.listDirectory("processed")).containsOnly("a.csv", "b.csv");
+    assertThat(sftp.listDirectory("to-move")).containsOnly("c.txt", "nested");
+  }
+
   @Test
   public void repeatable_bulk_delete_files_do_not_delete_the_same_files() {
     List<String> deletedFiles = new ArrayList<>();
@@ -300,6 +813,353 @@ public class SftpClientTest {
     assertThat(getCount[0]).isGreaterThan(1);
   }
 
+  @Test
+  public void do_not_retry_missing_file_and_keep_channel() {
+    int[] opened = {0};
+    int[] getCount = {0};
+    CustomJSch jsch = new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return true; }
+
+          @Override
+          public Channel openChannel(String type) {
+            opened[0]++;
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return true; }
+
+              @Override
+              public InputStream get(String src) throws SftpException {
+                getCount[0]++;
+                throw new SftpException(2, "No such file");
+              }
+            };
+          }
+        };
+      }
+    };
+
+    SftpClient sftp = sftpClientBuilder()
+      .port(2007)
+      .jsch(jsch)
+      .build();
+
+    sftp.connect();
+
+    assertThatThrownBy(() -> sftp.download("remote-path", new File("target")))
+      .isExactlyInstanceOf(SftpClientException.class);
+    assertThatThrownBy(() -> sftp.download("remote-path", new File("target")))
+      .isExactlyInstanceOf(SftpClientException.class);
+    assertThat(getCount[0]).isEqualTo(2);
+    assertThat(opened[0]).isEqualTo(1);
+  }
+
+  @Test
+  public void do_not_retry_programming_errors_and_keep_channel() {
+    int[] opened = {0};
+    int[] calls = {0};
+    SftpClient sftp = sftpClientBuilder()
+      .port(2007)
+      .jsch(countingChannelsJSch(opened))
+      .build();
+
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(() -> sftp.doInSftp("op", channel -> {
+        calls[0]++;
+        return Objects.requireNonNull(null, "bug");
+      })).hasCauseExactlyInstanceOf(NullPointerException.class);
+    }
+    assertThat(calls[0]).isEqualTo(2);
+    assertThat(opened[0]).isEqualTo(1);
+  }
+
+  @Test
+  public void record_operations_sessions_and_channels_into_metrics() throws IOException {
+    RecordingMetrics metrics = new RecordingMetrics();
+    SftpClient sftp = sftpClientBuilder().metrics(metrics).build();
+
+    sftp.upload(ByteBuffer.wrap("metrics".getBytes(UTF_8)), "subdir/metrics");
+    sftp.download("subdir/metrics", new ByteArrayOutputStream());
+    assertThatThrownBy(() -> sftp.delete("subdir/not-there"))
+      .isExactlyInstanceOf(SftpClientException.class);
+
+    assertThat(metrics.latency("upload").count()).isEqualTo(1);
+    assertThat(metrics.bytes("upload")).isEqualTo(7);
+    assertThat(metrics.bytes("download")).isEqualTo(7);
+    assertThat(metrics.failures("delete")).isEqualTo(1);
+    assertThat(metrics.retries("delete")).isZero();
+    assertThat(metrics.sessionOpening().count()).isEqualTo(1);
+    assertThat(metrics.channelOpening().count()).isEqualTo(1);
+    assertThat(metrics.sessions()).isEqualTo(1);
+    assertThat(metrics.leasedChannels()).isZero();
+  }
+
+  @Test
+  public void transfer_files__with_tuned_window_packets_and_buffers() throws IOException {
+    byte[] content = new byte[300 * 1024 + 17];
+    new Random(19).nextBytes(content);
+    SftpClient sftp = sftpClientBuilder()
+      .bulkRequests(64)
+      .windowSize(8 * 1024 * 1024)
+      .packetSize(64 * 1024)
+      .copyBufferSize(1000)
+      .autoTune(100L * 1024 * 1024)
+      .build();
+
+    sftp.upload(ByteBuffer.wrap(content), "subdir/tuned");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long downloaded = sftp.download("subdir/tuned", out);
+
+    assertThat(sftpServer.getFileContent("/subdir/tuned")).isEqualTo(content);
+    assertThat(downloaded).isEqualTo(content.length);
+    assertThat(out.toByteArray()).isEqualTo(content);
+  }
+
+  @Test
+  public void transfer_over_compressed_session__only_when_it_pays_off() throws IOException {
+    File dir = Files.createTempDirectory("compression").toFile();
+    File text = new File(dir, "rows.data");
+    Files.writeString(text.toPath(), "id,name,amount\n1,first,100\n".repeat(5000));
+    File random = new File(dir, "random.data");
+    byte[] noise = new byte[100 * 1024];
+    new Random(3).nextBytes(noise);
+    Files.write(random.toPath(), noise);
+    sftpServer.putFile("/subdir/rows.csv", Files.readAllBytes(text.toPath()));
+    List<Boolean> downloads = new ArrayList<>();
+    RecordingMetrics metrics = new RecordingMetrics() {
+      @Override
+      public void compression(String operation, boolean compressed, long bytes, long nanos) {
+        super.compression(operation, compressed, bytes, nanos);
+        if (operation.equals("download")) {
+          downloads.add(compressed);
+        }
+      }
+    };
+    SftpClient sftp = sftpClientBuilder()
+      .compression(Compression.ADAPTIVE)
+      .metrics(metrics)
+      .build();
+
+    sftp.upload(text, "subdir");
+    sftp.upload(random, "subdir");
+    // decided by remote file name, whatever local file is called
+    File plain = sftp.download("subdir/random.data", new File(dir, "downloaded.csv"));
+    File compressed = sftp.download("subdir/rows.csv", new File(dir, "downloaded.zip"));
+
+    assertThat(sftpServer.getFileContent("/subdir/random.data")).isEqualTo(noise);
+    assertThat(plain).hasBinaryContent(noise);
+    assertThat(compressed).hasSameContentAs(text);
+    assertThat(downloads).containsExactly(false, true);
+    assertThat(metrics.compressedBytes("upload")).isEqualTo(text.length());
+    // text shrinks many times, even with handshake and sftp framing on the wire
+    assertThat(metrics.compressionRatio()).isGreaterThan(2);
+    // plain and compressed sessions are pooled separately
+    assertThat(metrics.sessionOpening().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void share_jsch_with_identity__between_clients() {
+    CustomJSch jsch = new CustomJSch();
+    jsch.addRsaIdentity(content("files/private-key"));
+    SftpClient first = sftpClient().host("localhost").port(port).username("user").jsch(jsch)
+      .algorithmProfile(AlgorithmProfile.THROUGHPUT)
+      .build();
+    SftpClient second = sftpClient().host("localhost").port(port).username("user").jsch(jsch)
+      .algorithmProfile(AlgorithmProfile.LOW_LATENCY)
+      .build();
+
+    assertThat(first.listDirectory("subdir")).isEmpty();
+    assertThat(second.listDirectory("subdir")).isEmpty();
+  }
+
+  @Test
+  public void limit_packet_size__to_fit_into_jsch_packet_with_headers() throws IOException {
+    byte[] content = new byte[1024 * 1024];
+    new Random(5).nextBytes(content);
+    sftpServer.putFile("/subdir/large-packets", content);
+    SftpClient sftp = sftpClientBuilder().packetSize(255 * 1024).build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sftp.download("subdir/large-packets", out);
+
+    assertThat(out.toByteArray()).isEqualTo(content);
+    assertThatThrownBy(() -> sftpClientBuilder().packetSize(256 * 1024).build())
+      .isExactlyInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void require_private_key__when_jsch_has_no_identity() {
+    assertThatThrownBy(() -> sftpClient().host("localhost").jsch(new CustomJSch()).build())
+      .isExactlyInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Private key must be set");
+  }
+
+  @Test
+  public void trace_one_in_n_sessions__when_wire_trace_sampling_is_on() {
+    Logger trace = (Logger) LoggerFactory.getLogger("org.iinegve.CustomJSch.trace");
+    ListAppender<ILoggingEvent> traced = new ListAppender<>();
+    traced.start();
+    trace.addAppender(traced);
+    try {
+      SftpClient sftp = sftpClientBuilder().wireTraceSampling(2).build();
+      for (int i = 0; i < 3; i++) {
+        sftp.connect();
+      }
+      sftp.disconnect();
+
+      assertThat(traced.list)
+        .filteredOn(event -> event.getFormattedMessage().startsWith("Connecting to"))
+        .hasSize(2);
+    } finally {
+      trace.detachAppender(traced);
+    }
+  }
+
+  @Test
+  public void upload_file_with_sidecar_and_download_it_verified() throws IOException {
+    File dir = Files.createTempDirectory("checksum").toFile();
+    File file = new File(dir, "data.csv");
+    Files.writeString(file.toPath(), "id,name\n1,first\n");
+    SftpClient sftp = workingSftpClient();
+
+    String digest = sftp.upload(file, "subdir", Checksum.SHA256);
+    File downloaded = sftp.download("subdir/data.csv", new File(dir, "downloaded.csv"),
+      Checksum.SHA256);
+
+    assertThat(digest).isEqualTo(sha256(Files.readAllBytes(file.toPath())));
+    assertThat(new String(sftpServer.getFileContent("/subdir/data.csv.sha256"), UTF_8))
+      .isEqualTo(digest + "  data.csv\n");
+    assertThat(downloaded).hasSameContentAs(file);
+  }
+
+  @Test
+  public void fail_and_retry_download__when_checksum_does_not_match() throws IOException {
+    sftpServer.putFile("/subdir/data.csv", "id,name\n1,first\n", UTF_8);
+    sftpServer.putFile("/subdir/data.csv.md5", "0123456789abcdef0123456789abcdef  data.csv", UTF_8);
+    File local = new File(Files.createTempDirectory("checksum").toFile(), "data.csv");
+    RecordingMetrics metrics = new RecordingMetrics();
+    SftpClient sftp = sftpClientBuilder().metrics(metrics).build();
+
+    assertThatThrownBy(() -> sftp.download("subdir/data.csv", local, Checksum.MD5))
+      .isExactlyInstanceOf(SftpClientException.class)
+      .hasRootCauseExactlyInstanceOf(ChecksumMismatchException.class);
+    assertThat(metrics.retries("download")).isEqualTo(1);
+    assertThat(local).doesNotExist();
+  }
+
+  @Test
+  public void fail_download_right_away__when_sidecar_is_missing() throws IOException {
+    sftpServer.putFile("/subdir/data.csv", "id,name\n1,first\n", UTF_8);
+    File local = new File(Files.createTempDirectory("checksum").toFile(), "data.csv");
+    RecordingMetrics metrics = new RecordingMetrics();
+    SftpClient sftp = sftpClientBuilder().metrics(metrics).build();
+
+    assertThatThrownBy(() -> sftp.download("subdir/data.csv", local, Checksum.CRC32C))
+      .isExactlyInstanceOf(SftpClientException.class)
+      .hasRootCauseExactlyInstanceOf(SftpException.class);
+    assertThat(metrics.retries("download")).isZero();
+    assertThat(local).doesNotExist();
+  }
+
+  @Test
+  public void stat_file_and_directory__and_tell_missing_path_without_retry() {
+    RecordingMetrics metrics = new RecordingMetrics();
+    SftpClient sftp = sftpClientBuilder().metrics(metrics).build();
+
+    Optional<RemoteFile> file = sftp.stat("list-files/sublist-files/first-file");
+    Optional<RemoteFile> dir = sftp.stat("list-files");
+
+    assertThat(file).hasValueSatisfying(f -> {
+      assertThat(f.path()).isEqualTo("list-files/sublist-files/first-file");
+      assertThat(f.name()).isEqualTo("first-file");
+      assertThat(f.size()).isEqualTo("first file content".length());
+      assertThat(f.isDirectory()).isFalse();
+    });
+    assertThat(dir).hasValueSatisfying(d -> assertThat(d.isDirectory()).isTrue());
+    assertThat(sftp.stat("not-there")).isEmpty();
+    assertThat(sftp.exists("file-in-root")).isTrue();
+    assertThat(sftp.exists("subdir/not-there")).isFalse();
+    assertThat(metrics.retries("stat")).isZero();
+  }
+
+  @Test
+  public void stat_many_paths_at_once__in_given_order() throws IOException {
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      if (i % 2 == 0) {
+        sftpServer.putFile("/subdir/file-" + i, "content " + i, UTF_8);
+      }
+      paths.add("subdir/file-" + i);
+    }
+    SftpClient sftp = workingSftpClient();
+
+    Map<String, Optional<RemoteFile>> stats = sftp.statAll(paths, 4);
+
+    assertThat(stats.keySet()).containsExactlyElementsOf(paths);
+    for (int i = 0; i < 100; i++) {
+      Optional<RemoteFile> file = stats.get("subdir/file-" + i);
+      if (i % 2 == 0) {
+        assertThat(file).hasValueSatisfying(f -> assertThat(f.name()).startsWith("file-"));
+      } else {
+        assertThat(file).isEmpty();
+      }
+    }
+  }
+
+  @Test
+  public void take_stats_from_metadata_cache__when_it_is_on() throws IOException {
+    RecordingMetrics metrics = new RecordingMetrics();
+    SftpClient sftp = sftpClientBuilder()
+      .metrics(metrics)
+      .metadataCache(Duration.ofMinutes(1), 100)
+      .build();
+
+    sftp.statAll(List.of("file-in-root", "not-there"));
+    long stats = metrics.latency("stat").count();
+    Map<String, Optional<RemoteFile>> cached = sftp.statAll(List.of("./file-in-root", "not-there"));
+
+    assertThat(metrics.latency("stat").count()).isEqualTo(stats);
+    assertThat(cached.get("./file-in-root")).hasValueSatisfying(
+      f -> assertThat(f.path()).isEqualTo("./file-in-root"));
+    assertThat(cached.get("not-there")).isEmpty();
+    assertThat(sftp.exists("not-there")).isFalse();
+    assertThat(metrics.latency("stat").count()).isEqualTo(stats);
+  }
+
+  @Test
+  public void fail_over_to_next_endpoint__when_one_is_down() {
+    SftpClient sftp = sftpClient()
+      .endpoint("localhost", 2999)
+      .endpoint("localhost", port)
+      .username("user")
+      .privateKey(content("files/private-key"))
+      .build();
+
+    assertThat(sftp.listDirectory("subdir")).isEmpty();
+
+    List<EndpointStats> stats = sftp.endpointStats();
+    assertThat(stats).extracting(EndpointStats::endpoint)
+      .containsExactly(Endpoint.of("localhost", 2999), Endpoint.of("localhost", port));
+    assertThat(stats.get(0).isAvailable()).isFalse();
+    assertThat(stats.get(0).sessions()).isZero();
+    assertThat(stats.get(1).isAvailable()).isTrue();
+    assertThat(stats.get(1).sessions()).isEqualTo(1);
+    assertThat(stats.get(1).channelLatency()).isGreaterThan(Duration.ZERO);
+  }
+
+  @Test
+  public void apply_session_config__on_top_of_defaults() {
+    // test server accepts only password, so limiting authentication to key has to fail
+    SftpClient sftp = sftpClientBuilder()
+      .sessionConfig("PreferredAuthentications", "publickey")
+      .build();
+
+    assertThatThrownBy(sftp::connect)
+      .isExactlyInstanceOf(SftpClientException.class)
+      .hasMessageContaining("Auth fail");
+  }
+
   @Test
   public void disconnect_without_connect_does_not_throw() {
     assertThatCode(workingSftpClient()::disconnect).doesNotThrowAnyException();
@@ -364,6 +1224,70 @@ public class SftpClientTest {
     assertThat(connected[0]).isEqualTo(2);
   }
 
+  @Test
+  public void reuse_channel__for_consecutive_operations() {
+    int[] opened = {0};
+    SftpClient sftp = sftpClientBuilder()
+      .jsch(countingChannelsJSch(opened))
+      .build();
+
+    sftp.listDirectory(".");
+    sftp.delete("some-file");
+    sftp.move("from", "to");
+
+    assertThat(opened[0]).isEqualTo(1);
+  }
+
+  @Test
+  public void open_channel_per_operation__when_channel_reuse_is_off() {
+    int[] opened = {0};
+    SftpClient sftp = sftpClientBuilder()
+      .jsch(countingChannelsJSch(opened))
+      .maxIdleChannels(0)
+      .build();
+
+    sftp.listDirectory(".");
+    sftp.delete("some-file");
+
+    assertThat(opened[0]).isEqualTo(2);
+  }
+
+  @Test
+  public void open_new_channel__when_cached_one_failed_operation() {
+    int[] opened = {0};
+    int[] rmCount = {0};
+    CustomJSch jsch = new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return true; }
+
+          @Override
+          public Channel openChannel(String type) {
+            opened[0]++;
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return true; }
+
+              @Override
+              public void rm(String path) throws SftpException {
+                if (rmCount[0]++ < 2) {
+                  throw new SftpException(4, "Failure", new IOException("Pipe closed"));
+                }
+              }
+            };
+          }
+        };
+      }
+    };
+    SftpClient sftp = sftpClientBuilder().jsch(jsch).build();
+
+    assertThatThrownBy(() -> sftp.delete("some-file"))
+      .isExactlyInstanceOf(SftpClientException.class);
+    sftp.delete("some-file");
+
+    assertThat(opened[0]).isEqualTo(3);
+  }
+
   @Test
   public void creating_sftpClient_throws__when_privateKey_is_null_or_empty() {
     assertThatThrownBy(() -> sftpClientBuilder().privateKey(null).build())
@@ -373,10 +1297,40 @@ public class SftpClientTest {
       .isExactlyInstanceOf(IllegalArgumentException.class);
   }
 
+  private static CustomJSch countingChannelsJSch(int[] opened) {
+    return new CustomJSch() {
+      @Override
+      public Session getSession(String username, String host, int port) throws JSchException {
+        return new DummySession() {
+          @Override public boolean isConnected() { return true; }
+
+          @Override
+          public Channel openChannel(String type) {
+            opened[0]++;
+            return new DummyChannelSftp() {
+              @Override public boolean isConnected() { return true; }
+              @Override public void rm(String path) { }
+              @Override public void rename(String oldPath, String newPath) { }
+            };
+          }
+        };
+      }
+    };
+  }
+
   private static SftpClient workingSftpClient() {
     return sftpClientBuilder().build();
   }
 
+  @SneakyThrows
+  private static String sha256(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
   private static SftpClientBuilder sftpClientBuilder() {
     return sftpClient()
       .host("localhost")
@@ -0,0 +1,122 @@
+package org.iinegve.sftp;
+
+import com.github.stefanbirkner.fakesftpserver.rule.FakeSftpServerRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.iinegve.sftp.SftpClient.sftpClient;
+
+public class SftpMirrorTest {
+
+  private static final int port = 2001;
+
+  @Rule
+  public final FakeSftpServerRule sftpServer = new FakeSftpServerRule()
+    .setPort(port)
+    .addUser("user", "");
+
+  private SftpClient sftp;
+  private File localDir;
+
+  @Before
+  public void setUp() throws Exception {
+    sftp = sftpClient()
+      .host("localhost")
+      .port(port)
+      .username("user")
+      .privateKey(Files.readAllBytes(Paths.get(
+        SftpMirrorTest.class.getResource("/files/private-key").toURI())))
+      .build();
+    localDir = Files.createTempDirectory("sftp-mirror").toFile();
+    localDir.deleteOnExit();
+  }
+
+  @Test
+  public void pull_only_new_and_modified_files() throws IOException {
+    sftpServer.putFile("/remote/a", "a", UTF_8);
+    sftpServer.putFile("/remote/sub/b", "b", UTF_8);
+    sftpServer.putFile("/remote/sub/deeper/c", "c", UTF_8);
+    SftpMirror mirror = new SftpMirror(sftp).deleteExtraneous(true);
+
+    SyncReport first = mirror.pull("remote", localDir);
+    assertThat(first.transfers().succeededCount()).isEqualTo(3);
+    assertThat(content(new File(localDir, "sub/deeper/c"))).isEqualTo("c");
+
+    SyncReport second = mirror.pull("remote", localDir);
+    assertThat(second.transfers().results()).isEmpty();
+    assertThat(second.unchanged()).isEqualTo(3);
+
+    sftpServer.putFile("/remote/sub/b", "modified b", UTF_8);
+    sftp.delete("remote/a");
+    SyncReport third = mirror.pull("remote", localDir);
+    assertThat(third.transfers().results()).extracting(TransferResult::source)
+      .containsOnly("remote/sub/b");
+    assertThat(third.deleted()).hasSize(1);
+    assertThat(content(new File(localDir, "sub/b"))).isEqualTo("modified b");
+    assertThat(new File(localDir, "a")).doesNotExist();
+  }
+
+  @Test
+  public void push_only_new_and_modified_files__using_manifest() throws Exception {
+    File manifest = new File(Files.createTempDirectory("sftp-manifest").toFile(), "manifest");
+    write(new File(localDir, "a"), "a");
+    write(new File(localDir, "sub/b"), "b");
+    SftpMirror mirror = new SftpMirror(sftp).manifest(manifest).deleteExtraneous(true);
+
+    SyncReport first = mirror.push(localDir, "remote/outbox");
+    assertThat(first.transfers().succeededCount()).isEqualTo(2);
+    assertThat(sftpServer.getFileContent("/remote/outbox/sub/b", UTF_8)).isEqualTo("b");
+
+    SyncReport second = mirror.push(localDir, "remote/outbox");
+    assertThat(second.transfers().results()).isEmpty();
+    assertThat(second.unchanged()).isEqualTo(2);
+
+    write(new File(localDir, "sub/b"), "modified b");
+    assertThat(new File(localDir, "a").delete()).isTrue();
+    SyncReport third = new SftpMirror(sftp).manifest(manifest).deleteExtraneous(true)
+      .push(localDir, "remote/outbox");
+    assertThat(third.transfers().results()).extracting(TransferResult::destination)
+      .containsOnly("remote/outbox/sub/b");
+    assertThat(third.deleted()).containsOnly("remote/outbox/a");
+    assertThat(sftpServer.getFileContent("/remote/outbox/sub/b", UTF_8)).isEqualTo("modified b");
+    assertThat(sftpServer.existsFile("/remote/outbox/a")).isFalse();
+  }
+
+  @Test
+  public void push_compares_with_remote_files__without_manifest() throws Exception {
+    write(new File(localDir, "a"), "a");
+    SftpMirror mirror = new SftpMirror(sftp);
+
+    assertThat(mirror.push(localDir, "remote").transfers().succeededCount()).isEqualTo(1);
+    assertThat(mirror.push(localDir, "remote").unchanged()).isEqualTo(1);
+  }
+
+  @Test
+  public void push_leaves_remote_tree_alone__when_local_directory_missing() throws Exception {
+    sftpServer.putFile("/remote/a", "a", UTF_8);
+    SftpMirror mirror = new SftpMirror(sftp).deleteExtraneous(true);
+
+    assertThatThrownBy(() -> mirror.push(new File(localDir, "typo"), "remote"))
+      .isExactlyInstanceOf(IllegalArgumentException.class);
+    assertThat(sftpServer.existsFile("/remote/a")).isTrue();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.writeString(file.toPath(), content);
+  }
+
+  private static String content(File file) throws IOException {
+    return Files.readString(file.toPath());
+  }
+}
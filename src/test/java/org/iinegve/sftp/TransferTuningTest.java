@@ -0,0 +1,44 @@
+package org.iinegve.sftp;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferTuningTest {
+
+  private static final long MILLI = 1_000_000;
+
+  @Test
+  public void keep_configured_sizes__when_auto_tune_is_off() {
+    TransferTuning tuning = new TransferTuning(16, 2 * 1024 * 1024, 32 * 1024, 0);
+
+    assertThat(tuning.isAdaptive()).isFalse();
+    assertThat(tuning.bulkRequests(100 * MILLI)).isEqualTo(16);
+    assertThat(tuning.windowSize(100 * MILLI)).isEqualTo(2 * 1024 * 1024);
+  }
+
+  @Test
+  public void cover_bandwidth_delay_product__when_auto_tune_is_on() {
+    // 100 MiB/s with 50 ms round trip keeps 5 MiB in flight
+    TransferTuning tuning = new TransferTuning(16, 2 * 1024 * 1024, 32 * 1024, 100L << 20);
+
+    assertThat(tuning.bulkRequests(50 * MILLI)).isEqualTo(160);
+    assertThat(tuning.windowSize(50 * MILLI)).isEqualTo(10 * 1024 * 1024);
+  }
+
+  @Test
+  public void never_go_below_configured_or_above_limits() {
+    TransferTuning tuning = new TransferTuning(16, 2 * 1024 * 1024, 32 * 1024, 100L << 20);
+
+    assertThat(tuning.bulkRequests(0)).isEqualTo(16);
+    assertThat(tuning.bulkRequests(MILLI / 10)).isEqualTo(16);
+    assertThat(tuning.windowSize(MILLI / 10)).isEqualTo(2 * 1024 * 1024);
+    assertThat(tuning.bulkRequests(10_000 * MILLI)).isEqualTo(TransferTuning.MAX_BULK_REQUESTS);
+    assertThat(tuning.windowSize(10_000 * MILLI)).isEqualTo(TransferTuning.MAX_WINDOW_SIZE);
+  }
+
+  @Test
+  public void estimate_round_trip_out_of_channel_opening() {
+    assertThat(TransferTuning.roundTrip(30 * MILLI)).isEqualTo(10 * MILLI);
+  }
+}
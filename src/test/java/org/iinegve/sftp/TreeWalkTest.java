@@ -0,0 +1,72 @@
+package org.iinegve.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TreeWalkTest {
+
+  private final Map<String, List<RemoteFile>> tree = Map.of(
+    "root", List.of(dir("root/open"), dir("root/locked"), file("root/file")),
+    "root/open", List.of(file("root/open/file")));
+
+  @Test
+  public void skip_subdirectory_that_cannot_be_listed() throws Exception {
+    Queue<String> unreadable = new ConcurrentLinkedQueue<>();
+    Queue<String> found = new ConcurrentLinkedQueue<>();
+
+    walk(unreadable).run("root", 2, file -> found.add(file.path()));
+
+    assertThat(found).containsOnly("root/open", "root/locked", "root/file", "root/open/file");
+    assertThat(unreadable).containsExactly("root/locked");
+  }
+
+  @Test
+  public void fail__when_root_cannot_be_listed() {
+    assertThatThrownBy(() -> walk(new ConcurrentLinkedQueue<>()).run("root/locked", 2, f -> true))
+      .isExactlyInstanceOf(SftpClientException.class);
+  }
+
+  @Test
+  public void fail__when_connection_fails() {
+    TreeWalk walk = new TreeWalk(dir -> {
+      if (dir.equals("root/locked")) {
+        throw new SftpClientException(new IOException("connection reset"));
+      }
+      return tree.get(dir);
+    }, Integer.MAX_VALUE, file -> true, file -> false, dir -> { });
+
+    assertThatThrownBy(() -> walk.run("root", 2, file -> true))
+      .isExactlyInstanceOf(SftpClientException.class);
+  }
+
+  private TreeWalk walk(Queue<String> unreadable) {
+    return new TreeWalk(dir -> {
+      if (dir.equals("root/locked")) {
+        throw new SftpClientException(
+          new SftpException(ChannelSftp.SSH_FX_PERMISSION_DENIED, "Permission denied"));
+      }
+      return tree.get(dir);
+    }, Integer.MAX_VALUE, file -> true, file -> false, unreadable::add);
+  }
+
+  private static RemoteFile dir(String path) {
+    return new RemoteFile(path, path.substring(path.lastIndexOf('/') + 1), 0, Instant.EPOCH,
+      0755, true, false);
+  }
+
+  private static RemoteFile file(String path) {
+    return new RemoteFile(path, path.substring(path.lastIndexOf('/') + 1), 1, Instant.EPOCH,
+      0644, false, false);
+  }
+}